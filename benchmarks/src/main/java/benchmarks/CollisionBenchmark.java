@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import physics.Particle;
+import physics.ParticleStore;
+
+/**
+ * Narrow phase cost of a single overlapping pair, through the Particle view and directly on the store.
+ * Positions are reset on every call so each call resolves a real overlap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+    private Particle a, b;
+    private ParticleStore store;
+
+    @Setup
+    public void setup(){
+        store = new ParticleStore(2);
+        store.add(100, 100, 4, 14, Color.RED.getRGB());
+        store.add(103, 101, 3, 13, Color.BLUE.getRGB());
+        a = new Particle(store, 0);
+        b = new Particle(store, 1);
+    }
+
+    @Benchmark
+    public boolean particleSolveCollision(){
+        a.setPosition(100, 100);
+        b.setPosition(103, 101);
+        return a.solveCollision(b);
+    }
+
+    @Benchmark
+    public boolean storeSolveCollision(){
+        store.x[0] = 100; store.y[0] = 100;
+        store.x[1] = 103; store.y[1] = 101;
+        return store.solveCollision(0, 1);
+    }
+}
@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import physics.ParticleStore;
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * gridMode 0 binning of a settled lattice, rebinning everything each substep against incremental moves.
+ * Setup records the positions of SUBSTEPS consecutive substeps, each call loads the next one (forwards,
+ * then backwards) and bins it, so every call sees one substep's worth of real motion. loadPositions
+ * measures the copy alone. The incremental grid's periodic full rebuild, once per gridRebuildInterval
+ * substeps, is left out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridBenchmark {
+    private static final int SUBSTEPS = 16;
+
+    @Param({"10000", "20000"})
+    public int particles;
+
+    @Param({"false", "true"})
+    public boolean incremental;
+
+    private Simulation simulation;
+    private double[][] xs, ys;
+    private int next = 0;
+
+    @Setup
+    public void setup(){
+        SimulationConfig config = new SimulationConfig();
+        config.numParticles = particles;
+        config.worldWidth = config.worldHeight = (int) Math.sqrt(particles) * 12 / 100 * 100; //a short fall, so the pile settles quickly
+        config.gridMode = 0;
+        config.layout = 1; //lattice, a dense pile that barely moves once it has settled
+        config.seed = 1;
+        config.incrementalGrid = incremental;
+        config.autoTune(1); //finest grid that divides the world
+        simulation = new Simulation(config);
+        simulation.step(180); //about 1% of the particles still change cell per substep after this
+        double dt = config.fixedDt();
+        ParticleStore s = simulation.getParticles();
+        xs = new double[SUBSTEPS][];
+        ys = new double[SUBSTEPS][];
+        for (int k = 0; k < SUBSTEPS; ++k){
+            simulation.substep(dt);
+            xs[k] = Arrays.copyOf(s.x, s.count);
+            ys[k] = Arrays.copyOf(s.y, s.count);
+        }
+        simulation.rebuildGrid();
+    }
+
+    @TearDown
+    public void tearDown(){
+        simulation.close();
+    }
+
+    private void loadNext(){
+        int k = next++ % (2 * SUBSTEPS - 2);
+        if (k >= SUBSTEPS){k = 2 * SUBSTEPS - 2 - k;}
+        ParticleStore s = simulation.getParticles();
+        System.arraycopy(xs[k], 0, s.x, 0, xs[k].length);
+        System.arraycopy(ys[k], 0, s.y, 0, ys[k].length);
+    }
+
+    @Benchmark
+    public void loadPositions(){ //the copy alone, to subtract from partitionParticles
+        loadNext();
+    }
+
+    @Benchmark
+    public void partitionParticles(){
+        loadNext();
+        simulation.partitionParticles();
+    }
+}
@@ -0,0 +1,119 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import physics.ParticleStore;
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * Broad phase, collision and whole substep cost on the spiral fixture the Simulation starts from.
+ * threads = 0 runs everything on the calling thread, otherwise the StepScheduler is used.
+ * Forks get the Vector API module so vector = true measures VectorNarrowPhase.
+ * The fixture is rebuilt every iteration so the particles do not settle across iterations. solveCollisions
+ * would separate them within a few calls and then time the no overlap case, so Positions puts them back
+ * where the fixture left them before every call.
+ * The defaults are a small matrix that runs in a few minutes, widen it with -p, e.g.
+ * -p particles=1000,10000,100000,1000000 -p gridMode=1,2 -p partitions=50,100,200. Combinations the
+ * config rejects (cells smaller than a particle for gridMode 1) fail in setup instead of measuring nonsense.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SimulationBenchmark {
+    @Param({"10000", "100000"})
+    public int particles;
+
+    @Param({"100"})
+    public int partitions;
+
+    @Param({"0", "4"})
+    public int threads;
+
+    @Param({"1"})
+    public int gridMode; //flat grid, -p gridMode=1,2 adds the hierarchical grid
+
+    @Param({"true", "false"})
+    public boolean vector; //SIMD narrow phase, only used by gridMode 1
+
+    @Param({"0"})
+    public int precision; //-p precision=0,1,2 compares float32 and fixed point collisions, gridMode 1 only
+
+    private Simulation simulation;
+    private double dt;
+    private double[] x, y, lastx, lasty; //the fixture after setup, restored by Positions
+    private int[] restSteps;
+
+    @State(Scope.Thread)
+    public static class Positions {
+        @Setup(Level.Invocation)
+        public void restore(SimulationBenchmark benchmark){ //the grid was binned for these positions, so it stays valid
+            ParticleStore s = benchmark.simulation.getParticles();
+            System.arraycopy(benchmark.x, 0, s.x, 0, benchmark.x.length);
+            System.arraycopy(benchmark.y, 0, s.y, 0, benchmark.y.length);
+            System.arraycopy(benchmark.lastx, 0, s.lastx, 0, benchmark.lastx.length);
+            System.arraycopy(benchmark.lasty, 0, s.lasty, 0, benchmark.lasty.length);
+            System.arraycopy(benchmark.restSteps, 0, s.restSteps, 0, benchmark.restSteps.length);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setup(){
+        SimulationConfig config = new SimulationConfig();
+        config.numParticles = particles;
+        config.numPartitions = partitions;
+        config.numThreads = threads;
+        config.gridMode = gridMode;
+        config.vectorCollisions = vector;
+        config.precision = gridMode == 1 ? precision : 0;
+        config.validate();
+        simulation = new Simulation(config);
+        dt = config.fixedDt();
+        simulation.substep(dt); //bins the particles once so the collision benchmarks have a grid to walk
+        ParticleStore s = simulation.getParticles();
+        x = Arrays.copyOf(s.x, s.count);
+        y = Arrays.copyOf(s.y, s.count);
+        lastx = Arrays.copyOf(s.lastx, s.count);
+        lasty = Arrays.copyOf(s.lasty, s.count);
+        restSteps = Arrays.copyOf(s.restSteps, s.count);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown(){
+        simulation.close();
+    }
+
+    @Benchmark
+    public void partitionParticles(){
+        simulation.rebuildGrid();
+    }
+
+    @Benchmark
+    public void solveCollisions(Positions positions){
+        if (threads == 0){simulation.solveCollisions();
+        } else {simulation.solveCollisionsThreaded();}
+    }
+
+    @Benchmark
+    public void substep(){
+        simulation.substep(dt);
+    }
+}
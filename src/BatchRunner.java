@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+import io.Checkpoint;
+import io.InputLog;
+import io.Scenario;
+import io.TrajectoryRecorder;
+import metrics.SimulationMetrics;
+import physics.ParticleStore;
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * Runs the simulation without a window for a fixed number of frames, as fast as the CPU allows.
+ * Usage: java BatchRunner [--frames n] [--particles n] [--threads n] [--substeps n] [--partitions n] [--grid-mode n]
+ *                         [--seed n] [--load checkpoint] [--save checkpoint] [--record trajectory] [--replay inputlog]
+ *                         [--scenario file] [--set name=value] [--auto-tune cores]
+ * Prints the run time, the mean per frame phase timings and counters (see SimulationMetrics) and a checksum
+ * of the final state so runs can be compared.
+ * --load resumes from a checkpoint (its saved parameters win over the other options), --save writes one at the end.
+ * --seed fixes the random seed, making the run bit exact at any thread count.
+ * --replay regenerates a windowed run from its input log (see InputLog) instead of running --frames.
+ * --record streams every frame to a trajectory file (see TrajectoryRecorder), waiting for the writer if it falls behind.
+ * --scenario applies a scenario file (see Scenario), --set any single SimulationConfig field, both in order with the
+ * other options so later ones win. --auto-tune picks the grid and threads for that many cores (0 = all) after all of them.
+ */
+public class BatchRunner {
+
+    public static void main(String[] args) throws IOException {
+        SimulationConfig config = new SimulationConfig();
+        int frames = 600;
+        Path load = null, save = null, record = null, replay = null;
+        Scenario scenario = null;
+        int autoTune = -1;
+
+        for (int i = 0; i < args.length; ++i){
+            String arg = args[i];
+            if (i + 1 >= args.length){usage("missing value for " + arg);}
+            String value = args[++i];
+            switch (arg) {
+                case "--frames": frames = Integer.parseInt(value); break;
+                case "--particles": config.numParticles = Integer.parseInt(value); break;
+                case "--threads": config.numThreads = Integer.parseInt(value); break;
+                case "--substeps": config.subSteps = Integer.parseInt(value); break;
+                case "--partitions": config.numPartitions = Integer.parseInt(value); break;
+                case "--grid-mode": config.gridMode = Integer.parseInt(value); break;
+                case "--seed": config.seed = Long.parseLong(value); break;
+                case "--replay": replay = Path.of(value); break;
+                case "--load": load = Path.of(value); break;
+                case "--save": save = Path.of(value); break;
+                case "--record": record = Path.of(value); break;
+                case "--scenario":
+                    try {
+                        scenario = Scenario.load(Path.of(value), config);
+                    } catch (IOException e) {
+                        usage(e.getMessage());
+                    }
+                    break;
+                case "--set":
+                    int split = value.indexOf('=');
+                    if (split < 0){usage("--set expects name=value");}
+                    try {
+                        Scenario.set(config, value.substring(0, split).trim(), value.substring(split + 1));
+                    } catch (IllegalArgumentException e) {
+                        usage("--set " + value + ": " + e.getMessage());
+                    }
+                    break;
+                case "--auto-tune": autoTune = Integer.parseInt(value); break;
+                default: usage("unknown option " + arg);
+            }
+        }
+
+        if (replay != null){
+            long start = System.nanoTime();
+            try (Simulation simulation = InputLog.replay(replay)) {
+                System.out.printf("replayed %d frames in %.3fs, seed %d%n",
+                    simulation.getFrameCount(), (System.nanoTime() - start) / 1e9, simulation.getSeed());
+                System.out.println("checksum: " + checksum(simulation.getParticles()));
+            }
+            return;
+        }
+
+        if (load == null){
+            if (autoTune >= 0){config.autoTune(autoTune);}
+            try {
+                config.validate();
+            } catch (IllegalArgumentException e) {
+                usage(e.getMessage());
+            }
+        }
+
+        try (Simulation simulation = load != null ? Checkpoint.load(load) : scenario != null ? scenario.create() : new Simulation(config)) {
+            long start = System.nanoTime();
+            if (record == null){
+                simulation.step(frames);
+            } else {
+                try (TrajectoryRecorder recorder = new TrajectoryRecorder(record, 8, 60, TrajectoryRecorder.Policy.BLOCK)) {
+                    recorder.record(simulation);
+                    for (int i = 0; i < frames; ++i){
+                        simulation.step(1);
+                        recorder.record(simulation);
+                    }
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("frames: %d, particles: %d, time: %.3fs, frames/s: %.1f%n",
+                frames, simulation.getParticles().count, seconds, frames / seconds);
+            System.out.printf("grid mode: %d, partitions: %d, threads: %d, substeps: %d, sleeping: %d%n", simulation.config.gridMode,
+                simulation.config.numPartitions, simulation.config.numThreads, simulation.getSubSteps(), simulation.getSleepingCount());
+            if (simulation.config.metrics){printMetrics(simulation.getMetrics());}
+            System.out.println("checksum: " + checksum(simulation.getParticles()));
+
+            if (save != null){
+                start = System.nanoTime();
+                Checkpoint.save(simulation, save);
+                System.out.printf("saved %s in %.3fs%n", save, (System.nanoTime() - start) / 1e9);
+            }
+        }
+    }
+
+    public static String checksum(ParticleStore particles){ //sum of positions, cheap way to spot diverging runs
+        double sx = 0, sy = 0;
+        for (int i = 1; i < particles.count; ++i){
+            sx += particles.x[i];
+            sy += particles.y[i];
+        }
+        return String.format("%.6f %.6f", sx, sy);
+    }
+
+    private static void printMetrics(SimulationMetrics m){
+        var phases = m.getPhaseMeanMillis();
+        System.out.printf("ms per frame: integration %.3f, binning %.3f, collisions %.3f (p99 %.3f), heat %.3f%n",
+            phases.get("integration"), phases.get("binning"), phases.get("collisions"),
+            m.getPhaseP99Millis().get("collisions"), phases.get("heat"));
+        System.out.printf("pairs per frame: %.0f tested, %.0f resolved, fullest cell: %d, allocated: %.1f KB/frame%n",
+            m.getPairsTestedPerFrame(), m.getPairsResolvedPerFrame(), m.getMaxCellOccupancy(),
+            m.allocatedBytes.getMean() / 1024);
+    }
+
+    private static void usage(String message){
+        System.err.println(message);
+        System.err.println("usage: BatchRunner [--frames n] [--particles n] [--threads n] [--substeps n] [--partitions n] [--grid-mode n] [--seed n] [--load file] [--save file] [--record file] [--replay file] [--scenario file] [--set name=value] [--auto-tune cores]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import distributed.LocalTransport;
+import distributed.SlabDomain;
+import physics.ParticleStore;
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * Compares a world split into slabs (distributed.SlabDomain) with the same world in one process.
+ * Usage: java DistributedCheck [--workers n] [--frames n] [--seeds n]
+ * The workers are threads talking over a LocalTransport. First they take a couple of frames from a state copied
+ * out of a settled single process run, and every particle has to end up where the single process put it
+ * unless one migrated: migrants join the end of the slots, and the order a cell is solved in changes with that. Then whole
+ * runs of seeds 1 .. n, as spawned and mirrored left to right, are compared by mean x and particles per slab.
+ * The scene is chaotic and the workers solve their particles in a different order, so single runs differ;
+ * what must not show up is a drift the same way in every run, which a halo too narrow for the solver gives.
+ * Exits with status 1 when those frames differ or the mean x or slab counts are off on average.
+ */
+public class DistributedCheck {
+    private static final int WARM_UP = 300; //frames before the copy, the pile has settled and hardly anything crosses an edge
+    private static final int FRAMES = 2; //taken from the same state
+    private static final double TOLERANCE = 1e-9; //px after those frames
+    private static final double DRIFT_TOLERANCE = 2; //px of mean x, averaged over the runs
+    private static final double COUNT_TOLERANCE = 40; //particles per slab, averaged over the runs
+
+    public static void main(String[] args) throws InterruptedException {
+        int workers = 2, frames = 400, seeds = 3;
+        for (int i = 0; i + 1 < args.length; i += 2){
+            switch (args[i]) {
+                case "--workers": workers = Integer.parseInt(args[i + 1]); break;
+                case "--frames": frames = Integer.parseInt(args[i + 1]); break;
+                case "--seeds": seeds = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("usage: DistributedCheck [--workers n] [--frames n] [--seeds n]");
+                    System.exit(2);
+            }
+        }
+        if (workers < 2 || args.length % 2 != 0){
+            System.err.println("usage: DistributedCheck [--workers n] [--frames n] [--seeds n], at least 2 workers");
+            System.exit(2);
+        }
+        boolean failed = false;
+
+        try (Simulation reference = new Simulation(config(1))) {
+            reference.step(WARM_UP);
+            Simulation[] parts = new Simulation[workers];
+            for (int r = 0; r < workers; ++r){parts[r] = copyOf(reference);}
+            SlabDomain[] domains = split(parts);
+            reference.step(FRAMES);
+            run(parts, simulation -> simulation.step(FRAMES));
+            double error = error(reference.getParticles(), parts);
+            long migrated = 0;
+            for (SlabDomain domain : domains){migrated += domain.getMigrated();}
+            System.out.printf("%d frames from the same state on %d workers: max %.3e px off the single process, %d migrated%n",
+                FRAMES, workers, error, migrated);
+            if (error > TOLERANCE && migrated == 0){failed = true;} //a migrant takes another slot, so its cell may solve in another order
+            for (Simulation part : parts){part.close();}
+        }
+
+        System.out.printf("%d frames from the start, single process against %d workers:%n", frames, workers);
+        System.out.println("  seed  layout    mean x one   mean x split   first slab one   first slab split");
+        double drift = 0, countDrift = 0;
+        int runs = 0, length = frames;
+        for (long seed = 1; seed <= seeds; ++seed){
+            for (int mirrored = 0; mirrored < 2; ++mirrored){
+                Simulation[] parts = new Simulation[workers];
+                for (int r = 0; r < workers; ++r){
+                    parts[r] = new Simulation(config(seed));
+                    if (mirrored == 1){mirror(parts[r]);}
+                }
+                SlabDomain[] domains = split(parts);
+                run(parts, simulation -> simulation.step(length));
+                double splitSum = 0;
+                int splitCount = 0;
+                for (Simulation part : parts){
+                    ParticleStore s = part.getParticles();
+                    for (int i = 1; i < s.count; ++i){splitSum += s.x[i];}
+                    splitCount += s.count - 1;
+                }
+                int splitFirst = parts[0].getParticles().count - 1;
+                for (Simulation part : parts){part.close();}
+
+                double sum = 0;
+                int first = 0, count;
+                try (Simulation single = new Simulation(config(seed))) {
+                    if (mirrored == 1){mirror(single);}
+                    single.step(frames);
+                    ParticleStore s = single.getParticles();
+                    for (int i = 1; i < s.count; ++i){
+                        sum += s.x[i];
+                        if (domains[0].owns(s.x[i])){++first;}
+                    }
+                    count = s.count - 1;
+                }
+                System.out.printf("  %4d  %-8s %11.3f %14.3f %16d %18d%n", seed, mirrored == 1 ? "mirrored" : "spawned",
+                    sum / count, splitSum / splitCount, first, splitFirst);
+                drift += splitSum / splitCount - sum / count;
+                countDrift += splitFirst - first;
+                ++runs;
+            }
+        }
+        System.out.printf("  average difference: mean x %+.3f px, first slab %+.1f particles%n", drift / runs, countDrift / runs);
+        if (Math.abs(drift / runs) > DRIFT_TOLERANCE || Math.abs(countDrift / runs) > COUNT_TOLERANCE){failed = true;}
+        System.out.println(failed ? "FAILED" : "ok");
+        if (failed){System.exit(1);}
+    }
+
+    private static SimulationConfig config(long seed){
+        SimulationConfig config = new SimulationConfig();
+        config.seed = seed;
+        config.minSubSteps = 0; //as SlabWorker runs it
+        config.validate();
+        return config;
+    }
+
+    private static Simulation copyOf(Simulation from){
+        Simulation simulation = new Simulation(from.config, false);
+        ParticleStore s = simulation.getParticles(), f = from.getParticles();
+        simulation.ensureCapacity(f.count);
+        for (int i = 0; i < f.count; ++i){s.copy(i, f, i);}
+        s.count = f.count;
+        s.seed = f.seed;
+        s.step = f.step;
+        s.nextId = f.nextId;
+        simulation.restoreClock(from.getTime(), from.getFrameCount(), from.isGracePeriodEnded());
+        simulation.restoreSubSteps(from.getSubSteps(), from.getCalmFrames());
+        simulation.rebuildGrid();
+        return simulation;
+    }
+
+    private static void mirror(Simulation simulation){ //flips the layout left to right, a drift the other way shows up here
+        ParticleStore s = simulation.getParticles();
+        double width = simulation.config.worldWidth;
+        for (int i = 1; i < s.count; ++i){
+            s.x[i] = width - s.x[i];
+            s.lastx[i] = width - s.lastx[i];
+            s.restx[i] = width - s.restx[i];
+            s.vx[i] = -s.vx[i];
+            s.ax[i] = -s.ax[i];
+        }
+        simulation.rebuildGrid();
+    }
+
+    private static SlabDomain[] split(Simulation[] parts){ //each copy of the world keeps its own slab
+        LocalTransport[] ends = LocalTransport.connect(parts.length);
+        SlabDomain[] domains = new SlabDomain[parts.length];
+        for (int r = 0; r < parts.length; ++r){
+            domains[r] = SlabDomain.of(ends[r], parts[r]);
+            domains[r].keepOwned(parts[r]);
+            parts[r].setDomain(domains[r]);
+        }
+        return domains;
+    }
+
+    private static void run(Simulation[] parts, Consumer<Simulation> work) throws InterruptedException {
+        Thread[] threads = new Thread[parts.length];
+        RuntimeException[] failure = new RuntimeException[1];
+        for (int r = 0; r < parts.length; ++r){
+            Simulation part = parts[r];
+            threads[r] = new Thread(() -> {
+                try {
+                    work.accept(part);
+                } catch (RuntimeException e) {
+                    synchronized (failure) {
+                        if (failure[0] == null){failure[0] = e;}
+                    }
+                    for (Thread t : threads){t.interrupt();} //the others would wait for its messages forever
+                }
+            }, "worker-" + r);
+        }
+        for (Thread t : threads){t.start();}
+        for (Thread t : threads){t.join();}
+        if (failure[0] != null){throw failure[0];}
+    }
+
+    private static double error(ParticleStore single, Simulation[] parts){ //largest distance of a particle from its single process position
+        Map<Integer, Integer> slots = new HashMap<>();
+        for (int i = 1; i < single.count; ++i){slots.put(single.id[i], i);}
+        double max = 0;
+        int seen = 0;
+        for (Simulation part : parts){
+            ParticleStore s = part.getParticles();
+            for (int i = 1; i < s.count; ++i){
+                int j = slots.get(s.id[i]);
+                max = Math.max(max, Math.hypot(s.x[i] - single.x[j], s.y[i] - single.y[j]));
+            }
+            seen += s.count - 1;
+        }
+        return seen == single.count - 1 ? max : Double.POSITIVE_INFINITY;
+    }
+}
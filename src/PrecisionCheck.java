@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+import physics.ParticleStore;
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * Accuracy of the reduced precision modes (SimulationConfig.precision) against the double baseline.
+ * Usage: java PrecisionCheck [--frames n] [--particles n] [--seed n]
+ * First every mode takes one substep from the same state, copied from a double run after a short warm up,
+ * and the position error against the double substep is printed. Then each mode runs the whole scene from
+ * the start and a few observables are compared. The scene is chaotic, so the long run also shows a double
+ * run with one particle nudged by 1e-9 px: differences that size are noise, not precision loss.
+ * Exits with status 1 when a single substep is off by more than TOLERANCE px or a mode leaves particles
+ * overlapping much more than the baseline.
+ */
+public class PrecisionCheck {
+    private static final String[] NAMES = {"double", "float32", "fixed"};
+    private static final double TOLERANCE = 1e-3; //px after one substep
+    private static final double OVERLAP_FACTOR = 1.5; //mean overlap allowed relative to double
+
+    public static void main(String[] args){
+        int frames = 300, particles = 6000;
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2){
+            switch (args[i]) {
+                case "--frames": frames = Integer.parseInt(args[i + 1]); break;
+                case "--particles": particles = Integer.parseInt(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                default:
+                    System.err.println("usage: PrecisionCheck [--frames n] [--particles n] [--seed n]");
+                    System.exit(2);
+            }
+        }
+        boolean failed = false;
+
+        try (Simulation reference = new Simulation(config(particles, seed, 0))) {
+            reference.step(60);
+            double dt = reference.config.fixedDt();
+            Simulation[] copies = new Simulation[NAMES.length];
+            for (int precision = 0; precision < NAMES.length; ++precision){
+                copies[precision] = copyOf(reference, config(particles, seed, precision));
+                copies[precision].substep(dt);
+            }
+            System.out.println("one substep from the same state, position error against double:");
+            for (int precision = 1; precision < NAMES.length; ++precision){
+                double[] error = error(copies[0].getParticles(), copies[precision].getParticles());
+                System.out.printf("  %-8s max %.3e px, rms %.3e px%n", NAMES[precision], error[0], error[1]);
+                if (error[0] > TOLERANCE){failed = true;}
+            }
+            for (Simulation copy : copies){copy.close();}
+        }
+
+        System.out.printf("%d frames from the start:%n", frames);
+        System.out.println("  mode       centre y    mean speed   mean overlap  max overlap");
+        double[] baseline = null;
+        for (int precision = -1; precision < NAMES.length; ++precision){
+            try (Simulation simulation = new Simulation(config(particles, seed, Math.max(precision, 0)))) {
+                if (precision < 0){simulation.getParticles().x[1] += 1e-9;}
+                simulation.step(frames);
+                double[] stats = observables(simulation.getParticles());
+                System.out.printf("  %-9s %10.3f %12.5f %14.5f %12.4f%n", precision < 0 ? "nudged" : NAMES[precision],
+                    stats[0], stats[1], stats[2], stats[3]);
+                if (precision == 0){baseline = stats;}
+                if (precision > 0 && stats[2] > baseline[2] * OVERLAP_FACTOR){failed = true;}
+            }
+        }
+        System.out.println(failed ? "FAILED" : "ok");
+        if (failed){System.exit(1);}
+    }
+
+    private static SimulationConfig config(int particles, long seed, int precision){
+        SimulationConfig config = new SimulationConfig();
+        config.numParticles = particles;
+        config.seed = seed;
+        config.precision = precision;
+        config.validate();
+        return config;
+    }
+
+    private static Simulation copyOf(Simulation from, SimulationConfig config){ //same state at another precision
+        Simulation simulation = new Simulation(config, false);
+        ParticleStore s = simulation.getParticles(), f = from.getParticles();
+        simulation.ensureCapacity(f.count);
+        for (int i = 0; i < f.count; ++i){s.copy(i, f, i);}
+        s.count = f.count;
+        s.seed = f.seed;
+        s.step = f.step;
+        simulation.restoreClock(from.getTime(), from.getFrameCount(), from.isGracePeriodEnded());
+        simulation.restoreSubSteps(from.getSubSteps(), from.getCalmFrames());
+        simulation.rebuildGrid();
+        return simulation;
+    }
+
+    private static double[] error(ParticleStore a, ParticleStore b){ //max and rms distance between the same slots
+        double max = 0, sum = 0;
+        for (int i = 1; i < a.count; ++i){
+            double dx = a.x[i] - b.x[i], dy = a.y[i] - b.y[i], d2 = dx * dx + dy * dy;
+            max = Math.max(max, d2);
+            sum += d2;
+        }
+        return new double[] {Math.sqrt(max), Math.sqrt(sum / (a.count - 1))};
+    }
+
+    private static double[] observables(ParticleStore s){ //centre of mass height, mean px per substep, mean and max overlap of touching pairs
+        int n = s.count - 1;
+        Integer[] order = new Integer[n];
+        double centre = 0, speed = 0;
+        for (int i = 1; i <= n; ++i){
+            order[i - 1] = i;
+            centre += s.y[i];
+            speed += Math.hypot(s.x[i] - s.lastx[i], s.y[i] - s.lasty[i]);
+        }
+        Arrays.sort(order, (i, j) -> Double.compare(s.x[i], s.x[j]));
+        double overlap = 0, maxOverlap = 0;
+        int touching = 0, reach = 0;
+        for (int i = 1; i <= n; ++i){reach = Math.max(reach, 2 * s.radius[i]);}
+        for (int a = 0; a < n; ++a){
+            int i = order[a];
+            for (int b = a + 1; b < n && s.x[order[b]] - s.x[i] < reach; ++b){
+                int j = order[b];
+                double o = s.radius[i] + s.radius[j] - Math.hypot(s.x[i] - s.x[j], s.y[i] - s.y[j]);
+                if (o > 0){
+                    overlap += o;
+                    maxOverlap = Math.max(maxOverlap, o);
+                    ++touching;
+                }
+            }
+        }
+        return new double[] {centre / n, speed / n, touching == 0 ? 0 : overlap / touching, maxOverlap};
+    }
+}
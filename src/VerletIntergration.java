@@ -0,0 +1,155 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+import graphics.Display;
+import graphics.Rasterizer;
+
+import io.InputLog;
+import io.Scenario;
+
+import metrics.SimulationMetrics;
+
+import physics.Simulation;
+import physics.SimulationConfig;
+import physics.Snapshot;
+import physics.SnapshotBuffer;
+
+public class VerletIntergration {
+
+    private Simulation simulation;
+    private Display display;
+    private SnapshotBuffer snapshots = new SnapshotBuffer(); //physics thread writes, render thread reads
+    private volatile double physicsFps = 0;
+
+    /// ------------------------------------ Main parameters ------------------------------------ ///
+    // physics parameters live in SimulationConfig, these only affect the window
+    double motionBlurIntensity = 0.3;
+
+    boolean deterministic = false; // Determine wether to keep a constant dt or do a constant speed simulation
+    //^ increases stability, fully deterministic when SimulationConfig.seed is set
+
+    boolean doVelocityVisualisation = false; //cool effect to see energy transfer
+    volatile boolean showMetrics = false; //per phase timings and counters over the simulation, toggled with M
+    double displayFps = 60; //render rate, independent of the physics rate in SimulationConfig.fps
+    /// ----------------------------------------------------------------------------------------- ///
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--headless")){ //batch mode without a window
+            BatchRunner.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        Path inputLog = null;
+        Scenario scenario = null;
+        for (int i = 0; i + 1 < args.length; i += 2){
+            if (args[i].equals("--record-input")){inputLog = Path.of(args[i + 1]);} //replay with BatchRunner --replay
+            if (args[i].equals("--scenario")){scenario = Scenario.load(Path.of(args[i + 1]));} //parameters and layout from a file, see Scenario
+        }
+        if (inputLog != null && scenario != null && !scenario.isReplayable()){ //the log would replay a different run
+            System.err.println("--record-input needs a scenario without a particles file, emitters or sinks");
+            System.err.println("usage: VerletIntergration [--headless batch options] [--scenario file] [--record-input file]");
+            System.exit(2);
+        }
+        new VerletIntergration(scenario, inputLog);
+    }
+
+    /// -------------------------------- START OF MAIN -------------------------------- //
+
+    public VerletIntergration(Scenario scenario, Path inputLogPath) throws IOException { //default parameters without a scenario
+        SimulationConfig config = scenario != null ? scenario.config : new SimulationConfig();
+        display = new Display(config.worldWidth, config.worldHeight);
+        simulation = scenario != null ? scenario.create() : new Simulation(config);
+        display.trackPointer(simulation.getPointer()); //the EDT writes the cursor, the physics loop never calls into AWT
+        display.onKey('m', () -> showMetrics = !showMetrics);
+        if (config.metrics){simulation.getMetrics().register("particlesim:type=Simulation");} //browse with jconsole or any JMX client
+
+        Thread renderer = new Thread(() -> renderLoop(config), "render");
+        renderer.setDaemon(true);
+        renderer.start();
+
+        long startTime = System.nanoTime();
+        double gametime = 0, lastTick = 0;
+
+        double dt = config.fixedDt(); // Default deltatime is for deterministic simulation (has best stability)
+        double frameTime = 1000 / config.fps;
+        boolean gracePeriodEnded = false;
+        InputLog.Writer inputLog = inputLogPath == null ? null : new InputLog.Writer(inputLogPath, simulation);
+
+        // physics loop, rendering happens on its own thread from published snapshots
+        while (true) {
+            lastTick = gametime;
+            gametime = (System.nanoTime() - startTime) / 1e6;
+
+            double wait = frameTime - (gametime - lastTick);
+            if (wait > 0) { // tick frames, sleep instead of spinning on the clock
+                LockSupport.parkNanos((long) (wait * 1e6));
+                gametime = (System.nanoTime() - startTime) / 1e6;
+            }
+
+            if (!deterministic) {
+                dt = (gametime - lastTick) / frameTime * config.timeScale / config.subSteps;
+            } // Constant speed simulation, dynamic dt
+
+            if (inputLog == null){simulation.update(dt); // perform physics
+            } else {inputLog.update(simulation, dt);}
+            simulation.publishSnapshot(snapshots);
+
+            double currentFps = (Math.round(1000 / (gametime - lastTick)) + physicsFps)/2;
+            physicsFps = currentFps;
+
+            if (simulation.isGracePeriodEnded() && !gracePeriodEnded){
+                System.out.println("grace period ended");
+                gracePeriodEnded = true;}
+        }
+    }
+
+    private void renderLoop(SimulationConfig config){
+        Rasterizer rasterizer = display.getRasterizer();
+        SimulationMetrics metrics = simulation.getMetrics();
+        long startTime = System.nanoTime();
+        double frameTime = 1000 / displayFps;
+        double now = 0, lastFrame = 0, previousFps = 0;
+
+        while (true) {
+            lastFrame = now;
+            now = (System.nanoTime() - startTime) / 1e6;
+            double wait = frameTime - (now - lastFrame);
+            if (wait > 0) {
+                LockSupport.parkNanos((long) (wait * 1e6));
+                now = (System.nanoTime() - startTime) / 1e6;
+            }
+
+            Snapshot particles = snapshots.acquire(); // newest finished physics frame
+            if (particles.frame < 0){continue;}
+
+            long renderStart = System.nanoTime();
+            rasterizer.decay(motionBlurIntensity); //motion blur effect, fades the last frame in place :)
+
+            for (int p = 1; p < particles.count; ++p) { // draw particles, skipping the cursor at index 0
+                int rgb = particles.color[p];
+                if (doVelocityVisualisation){rgb = rasterizer.velocityColor(particles.vx[p], particles.vy[p]);}
+                if (config.doFireSimulation){rgb = rasterizer.temperatureColor(particles.temperature[p]);}
+
+                rasterizer.drawDisc((int) particles.x[p], (int) particles.y[p], particles.radius[p], rgb);
+            }
+
+            double currentFps = (Math.round(1000 / (now - lastFrame)) + previousFps)/2;
+            previousFps = currentFps;
+            display.drawText("FPS: " + currentFps, 10, 20, Color.WHITE);
+            display.drawText("Physics FPS: " + physicsFps, 10, 32, Color.WHITE);
+            display.drawText("Particles Rendered: " + (particles.count - 1), 10, 44, Color.WHITE);
+            if (showMetrics){
+                String[] lines = metrics.overlay();
+                for (int i = 0; i < lines.length; ++i){display.drawText(lines[i], 10, 62 + 12 * i, Color.WHITE);}
+            }
+
+            long presentStart = System.nanoTime();
+            display.update();
+            if (config.metrics){
+                metrics.recordPhase(SimulationMetrics.RENDER, presentStart - renderStart);
+                metrics.recordPhase(SimulationMetrics.PRESENT, System.nanoTime() - presentStart);
+            }
+        }
+    }
+}
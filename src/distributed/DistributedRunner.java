@@ -0,0 +1,145 @@
+package distributed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Runs a simulation split across several SlabWorker processes on this machine and adds up their results.
+ * Usage: java distributed.DistributedRunner [--workers n] [--transport socket|files] [worker options...]
+ * Every other option goes to each worker unchanged (see SlabWorker). Workers get this JVM's classpath and
+ * flags, a random --seed unless one is given, and a fresh mailbox directory for --transport files.
+ * Prints the workers' output, then the totals in BatchRunner's format so checksums can be compared.
+ */
+public class DistributedRunner {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int workers = 2, frames = 600;
+        String transport = "socket";
+        boolean seeded = false;
+        List<String> passed = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i){
+            String arg = args[i];
+            if (i + 1 >= args.length){usage("missing value for " + arg);}
+            String value = args[++i];
+            switch (arg) {
+                case "--workers": workers = Integer.parseInt(value); break;
+                case "--transport": transport = value; break;
+                case "--rank": case "--dir": usage(arg + " is chosen by the runner"); break;
+                default:
+                    if (arg.equals("--seed")){seeded = true;}
+                    if (arg.equals("--frames")){frames = Integer.parseInt(value);}
+                    passed.add(arg);
+                    passed.add(value);
+            }
+        }
+        if (workers < 1){usage("need at least one worker");}
+        if (!seeded){
+            passed.add("--seed");
+            passed.add(Long.toString(ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE)));
+        }
+        passed.add("--transport");
+        passed.add(transport);
+        Path dir = null;
+        if (transport.equals("files")){
+            dir = Files.createTempDirectory("particlesim-");
+            passed.add("--dir");
+            passed.add(dir.toString());
+        }
+
+        List<String> java = new ArrayList<>();
+        java.add(ProcessHandle.current().info().command().orElse("java"));
+        java.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        java.add("-cp");
+        java.add(System.getProperty("java.class.path"));
+        java.add(SlabWorker.class.getName());
+
+        long start = System.nanoTime();
+        List<Process> processes = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        long[] particles = new long[workers];
+        double[][] sums = new double[workers][2];
+        try {
+            for (int rank = 0; rank < workers; ++rank){
+                List<String> command = new ArrayList<>(java);
+                command.add("--rank");
+                command.add(Integer.toString(rank));
+                command.add("--workers");
+                command.add(Integer.toString(workers));
+                command.addAll(passed);
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                processes.add(process);
+                Thread reader = new Thread(() -> relay(process, particles, sums), "worker-" + rank + "-output");
+                reader.start();
+                readers.add(reader);
+            }
+            for (Process process : processes){ //the others would wait for a failed worker forever
+                process.onExit().thenAccept(p -> {if (p.exitValue() != 0){processes.forEach(Process::destroy);}});
+            }
+            int failed = 0;
+            for (Process process : processes){
+                if (process.waitFor() != 0){++failed;}
+            }
+            for (Thread reader : readers){reader.join();}
+            if (failed > 0){
+                System.err.println(failed + " worker(s) failed");
+                System.exit(1);
+            }
+        } finally {
+            processes.forEach(Process::destroy);
+            if (dir != null){deleteRecursively(dir);}
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long count = 0;
+        double sx = 0, sy = 0;
+        for (int rank = 0; rank < workers; ++rank){
+            count += particles[rank];
+            sx += sums[rank][0];
+            sy += sums[rank][1];
+        }
+        System.out.printf("frames: %d, particles: %d, time: %.3fs, frames/s: %.1f, workers: %d%n",
+            frames, count + 1, seconds, frames / seconds, workers); //+1 for the cursor, as BatchRunner counts it
+        System.out.printf("checksum: %.6f %.6f%n", sx, sy);
+    }
+
+    private static void relay(Process process, long[] particles, double[][] sums){ //echoes a worker's output, picking up its sums line
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line; (line = in.readLine()) != null;){
+                if (line.startsWith("sums ")){
+                    String[] parts = line.split(" ");
+                    int rank = Integer.parseInt(parts[1]);
+                    particles[rank] = Long.parseLong(parts[2]); //read after join()
+                    sums[rank][0] = Double.parseDouble(parts[3]);
+                    sums[rank][1] = Double.parseDouble(parts[4]);
+                    continue;
+                }
+                synchronized (System.out) {
+                    System.out.println(line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("lost worker output: " + e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator){Files.delete(p);}
+        }
+    }
+
+    private static void usage(String message){
+        System.err.println(message);
+        System.err.println("usage: DistributedRunner [--workers n] [--transport socket|files] [SlabWorker options...]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,70 @@
+package distributed;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Transport between workers that are threads of one process, e.g. DistributedCheck.
+ * connect() makes every worker's end at once. A message is copied on send(), so the sender can reuse its
+ * buffer, and waits in a one slot queue until the peer takes it.
+ */
+public class LocalTransport implements Transport {
+    private final int rank, workers;
+    private final BlockingQueue<ByteBuffer>[][] queues; //[from][to]
+
+    private LocalTransport(int rankValue, int workersValue, BlockingQueue<ByteBuffer>[][] queuesValue){
+        rank = rankValue;
+        workers = workersValue;
+        queues = queuesValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static LocalTransport[] connect(int workers){
+        BlockingQueue<ByteBuffer>[][] queues = new BlockingQueue[workers][workers];
+        for (int from = 0; from < workers; ++from){
+            for (int to = 0; to < workers; ++to){queues[from][to] = new ArrayBlockingQueue<>(1);}
+        }
+        LocalTransport[] ends = new LocalTransport[workers];
+        for (int r = 0; r < workers; ++r){ends[r] = new LocalTransport(r, workers, queues);}
+        return ends;
+    }
+
+    @Override
+    public int rank(){
+        return rank;
+    }
+
+    @Override
+    public int workers(){
+        return workers;
+    }
+
+    @Override
+    public void send(int peer, ByteBuffer message) throws IOException {
+        ByteBuffer copy = ByteBuffer.allocate(message.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        copy.put(message.duplicate()).flip();
+        try {
+            queues[rank][peer].put(copy);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted sending to worker " + peer);
+        }
+    }
+
+    @Override
+    public ByteBuffer receive(int peer) throws IOException {
+        try {
+            return queues[peer][rank].take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for worker " + peer);
+        }
+    }
+
+    @Override
+    public void close(){}
+}
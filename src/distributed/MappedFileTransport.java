@@ -0,0 +1,126 @@
+package distributed;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transport through memory mapped files for workers on one machine, which skips the network stack.
+ * Each direction between two neighbours has a mailbox file in dir holding one message at a time:
+ *   0: sequence number of the last message written
+ *   8: sequence number of the last message read
+ *  16: length of the message
+ *  64: the message, at most capacity bytes
+ * The writer publishes the sequence number with release semantics after the message, the reader
+ * acknowledges the same way after copying it out, so neither side takes a lock. Waiting spins briefly,
+ * then parks. dir must not hold mailboxes of an earlier run.
+ */
+public class MappedFileTransport implements Transport {
+    public static final int DEFAULT_CAPACITY = 64 << 20;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int WRITTEN = 0, READ = 8, LENGTH = 16, PAYLOAD = 64;
+    private static final int SPINS = 1000;
+    private static final long TIMEOUT = 60_000_000_000L; //ns a peer may stay silent before we give up
+
+    private final int rank, workers, capacity;
+    private final MappedByteBuffer[] out = new MappedByteBuffer[2], in = new MappedByteBuffer[2]; //left, right
+    private final long[] sent = new long[2], received = new long[2];
+    private final ByteBuffer[] messages = new ByteBuffer[2];
+
+    public MappedFileTransport(int rankValue, int workersValue, Path dir) throws IOException {
+        this(rankValue, workersValue, dir, DEFAULT_CAPACITY);
+    }
+
+    public MappedFileTransport(int rankValue, int workersValue, Path dir, int capacityValue) throws IOException {
+        rank = rankValue;
+        workers = workersValue;
+        capacity = capacityValue;
+        for (int side = 0; side < 2; ++side){
+            int peer = side == 0 ? rank - 1 : rank + 1;
+            if (peer < 0 || peer >= workers){continue;}
+            out[side] = map(dir.resolve("mailbox-" + rank + "-" + peer));
+            in[side] = map(dir.resolve("mailbox-" + peer + "-" + rank));
+            messages[side] = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException { //both ends map the same size, whoever comes first creates it zeroed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_WRITE, 0, PAYLOAD + (long) capacity);
+            b.order(ByteOrder.nativeOrder());
+            return b; //stays valid after the channel closes
+        }
+    }
+
+    private int side(int peer){
+        if (peer == rank - 1 && out[0] != null){return 0;}
+        if (peer == rank + 1 && out[1] != null){return 1;}
+        throw new IllegalArgumentException("worker " + rank + " is not connected to " + peer);
+    }
+
+    @Override
+    public int rank(){
+        return rank;
+    }
+
+    @Override
+    public int workers(){
+        return workers;
+    }
+
+    @Override
+    public void send(int peer, ByteBuffer message) throws IOException {
+        int side = side(peer);
+        MappedByteBuffer box = out[side];
+        int length = message.remaining();
+        if (length > capacity){throw new IOException("message of " + length + " bytes does not fit the " + capacity + " byte mailbox");}
+        long sequence = ++sent[side];
+        await(box, READ, sequence - 1, peer); //the previous message has been taken
+        box.put(PAYLOAD, message, message.position(), length);
+        box.putInt(LENGTH, length);
+        LONGS.setRelease(box, WRITTEN, sequence);
+    }
+
+    @Override
+    public ByteBuffer receive(int peer) throws IOException {
+        int side = side(peer);
+        MappedByteBuffer box = in[side];
+        long sequence = ++received[side];
+        await(box, WRITTEN, sequence, peer);
+        int length = box.getInt(LENGTH);
+        ByteBuffer b = messages[side];
+        if (b.capacity() < length){
+            b = ByteBuffer.allocate(Math.max(length, b.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+            messages[side] = b;
+        }
+        b.clear().put(0, box, PAYLOAD, length).limit(length);
+        LONGS.setRelease(box, READ, sequence); //the sender may overwrite the mailbox now
+        return b;
+    }
+
+    private void await(MappedByteBuffer box, int offset, long sequence, int peer) throws IOException {
+        long start = 0;
+        for (int spins = 0; (long) LONGS.getAcquire(box, offset) < sequence; ++spins){
+            if (spins < SPINS){
+                Thread.onSpinWait();
+                continue;
+            }
+            if (start == 0){start = System.nanoTime();
+            } else if (System.nanoTime() - start > TIMEOUT){throw new IOException("worker " + peer + " stopped responding");}
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    @Override
+    public void close(){
+        //mappings are released with the buffers, the runner deletes the files
+    }
+}
@@ -0,0 +1,189 @@
+package distributed;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import physics.ParticleStore;
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * One worker's share of a world split into vertical slabs of whole grid columns, worker 0 leftmost.
+ * The outermost slabs reach to infinity so nothing can leave the world. After every substep's
+ * integration, exchange() hands particles that crossed an edge to the neighbour (migration) and sends
+ * copies of the ones within halo px of an edge along (ghosts), so contacts across the edge are solved
+ * on both sides. Each side keeps only the push its own particle got. The halo is as wide as a push can
+ * travel in one substep (Simulation.collisionReach()), so the ghosts next to the edge meet their whole
+ * neighbourhood in the same stripe order as in one process and a pair straddling the edge separates the
+ * same way on both sides without a second round of messages. A narrower halo leaves the ghosts without
+ * the neighbours pushing them towards the edge, and both sides drift away from it.
+ * Every worker has to exchange the same number of times, so substeps are fixed (minSubSteps = 0).
+ * The cursor (slot 0) stays on its own worker and never migrates.
+ */
+public class SlabDomain implements Simulation.Domain {
+    private static final int PARTICLE_BYTES = 12 * 8 + 4 * 4 + 1;
+
+    public final double left, right; //x range owned, [left, right)
+    public final double halo;
+    private final Transport transport;
+    private final int rank, workers;
+
+    private final ByteBuffer[] outgoing = new ByteBuffer[2]; //left, right
+    private final ByteBuffer[] incoming = new ByteBuffer[2];
+    private final int[] migrantCounts = new int[2], ghostCounts = new int[2];
+    private final ParticleStore emigrants = new ParticleStore(64); //left this substep, still collide here as ghosts
+    private int owned;
+    private long migrated; //particles received so far
+
+    public SlabDomain(Transport transportValue, double leftValue, double rightValue, double haloValue){
+        transport = transportValue;
+        rank = transport.rank();
+        workers = transport.workers();
+        left = rank == 0 ? Double.NEGATIVE_INFINITY : leftValue;
+        right = rank == workers - 1 ? Double.POSITIVE_INFINITY : rightValue;
+        halo = haloValue;
+        for (int side = 0; side < 2; ++side){outgoing[side] = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);}
+    }
+
+    public static SlabDomain of(Transport transport, Simulation simulation){ //slabs of config.gridWidth() / workers columns each
+        SimulationConfig config = simulation.config;
+        int columns = config.gridWidth(), n = transport.workers(), r = transport.rank();
+        double cellWidth = config.worldWidth / columns;
+        double halo = simulation.collisionReach();
+        double left = Math.floor((double) r * columns / n) * cellWidth;
+        double right = Math.floor((double) (r + 1) * columns / n) * cellWidth;
+        if (n > 1 && right - left < 2 * halo){
+            throw new IllegalArgumentException(String.format("slab of worker %d is %.0f px wide, %d workers need slabs of at least 2 x %.0f px",
+                r, right - left, n, halo));
+        }
+        return new SlabDomain(transport, left, right, halo);
+    }
+
+    public boolean owns(double x){
+        return x >= left && x < right;
+    }
+
+    public void keepOwned(Simulation simulation){ //drops every particle outside the slab, e.g. after spawning the whole world
+        ParticleStore s = simulation.getParticles();
+        int n = 1;
+        for (int p = 1; p < s.count; ++p){
+            if (owns(s.x[p])){s.copy(n++, s, p);}
+        }
+        s.count = n;
+        simulation.rebuildGrid();
+    }
+
+    public long getMigrated(){
+        return migrated;
+    }
+
+    @Override
+    public void exchange(Simulation simulation){
+        ParticleStore s = simulation.getParticles();
+        emigrants.count = 0;
+        for (int side = 0; side < 2; ++side){
+            outgoing[side].clear().putInt(0);
+            migrantCounts[side] = ghostCounts[side] = 0;
+        }
+        for (int p = 1; p < s.count; ++p){
+            int side = s.x[p] < left ? 0 : s.x[p] >= right ? 1 : -1;
+            if (side < 0){continue;}
+            write(side, s, p);
+            ++migrantCounts[side];
+            emigrants.ensureCapacity(emigrants.count + 1);
+            emigrants.copy(emigrants.count++, s, p);
+            s.copy(p--, s, --s.count); //swap remove, then look at the particle moved into p
+        }
+        for (int side = 0; side < 2; ++side){
+            outgoing[side].putInt(0, migrantCounts[side]).putInt(0); //ghost count follows the migrants
+        }
+        for (int p = 1; p < s.count; ++p){
+            if (s.x[p] < left + halo){write(0, s, p); ++ghostCounts[0];}
+            if (s.x[p] >= right - halo){write(1, s, p); ++ghostCounts[1];}
+        }
+        for (int side = 0; side < 2; ++side){
+            outgoing[side].putInt(4 + migrantCounts[side] * PARTICLE_BYTES, ghostCounts[side]).flip();
+        }
+
+        try {
+            //pairs (0, 1), (2, 3), ... talk first, then (1, 2), (3, 4), ..., the even worker of a pair sending first
+            boolean even = rank % 2 == 0;
+            talk(even ? rank + 1 : rank - 1, even);
+            talk(even ? rank - 1 : rank + 1, even);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int arriving = 0;
+        for (ByteBuffer b : incoming){
+            if (b == null){continue;}
+            int migrants = b.getInt(0);
+            arriving += migrants + b.getInt(4 + migrants * PARTICLE_BYTES);
+        }
+        simulation.ensureCapacity(s.count + arriving + emigrants.count);
+        s = simulation.getParticles();
+        for (ByteBuffer b : incoming){ //migrants first, they are ours from now on
+            if (b == null){continue;}
+            b.position(0);
+            for (int i = b.getInt(); i > 0; --i){read(b, s, s.count++);}
+            migrated += b.getInt(0);
+        }
+        owned = s.count;
+        for (ByteBuffer b : incoming){
+            if (b == null){continue;}
+            for (int i = b.getInt(); i > 0; --i){read(b, s, s.count++);}
+        }
+        for (int i = 0; i < emigrants.count; ++i){s.copy(s.count++, emigrants, i);}
+    }
+
+    private void talk(int peer, boolean sendFirst) throws IOException {
+        if (peer < 0 || peer >= workers){return;}
+        int side = peer < rank ? 0 : 1;
+        if (sendFirst){transport.send(peer, outgoing[side]);}
+        incoming[side] = transport.receive(peer);
+        if (!sendFirst){transport.send(peer, outgoing[side]);}
+    }
+
+    @Override
+    public void release(Simulation simulation){
+        simulation.getParticles().count = owned;
+    }
+
+    private void write(int side, ParticleStore s, int p){
+        ByteBuffer b = outgoing[side];
+        if (b.remaining() < PARTICLE_BYTES + 4){
+            ByteBuffer bigger = ByteBuffer.allocate(b.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            b.flip();
+            outgoing[side] = b = bigger.put(b);
+        }
+        b.putDouble(s.x[p]).putDouble(s.y[p]).putDouble(s.lastx[p]).putDouble(s.lasty[p]);
+        b.putDouble(s.ax[p]).putDouble(s.ay[p]).putDouble(s.vx[p]).putDouble(s.vy[p]);
+        b.putDouble(s.mass[p]).putDouble(s.temperature[p]).putDouble(s.restx[p]).putDouble(s.resty[p]);
+        b.putInt(s.radius[p]).putInt(s.color[p]).putInt(s.restSteps[p]).putInt(s.id[p]);
+        b.put((byte) ((s.contact[p] ? 1 : 0) | (s.onFloor[p] ? 2 : 0)));
+    }
+
+    private static void read(ByteBuffer b, ParticleStore s, int p){
+        s.x[p] = b.getDouble();
+        s.y[p] = b.getDouble();
+        s.lastx[p] = b.getDouble();
+        s.lasty[p] = b.getDouble();
+        s.ax[p] = b.getDouble();
+        s.ay[p] = b.getDouble();
+        s.vx[p] = b.getDouble();
+        s.vy[p] = b.getDouble();
+        s.mass[p] = b.getDouble();
+        s.temperature[p] = b.getDouble();
+        s.restx[p] = b.getDouble();
+        s.resty[p] = b.getDouble();
+        s.radius[p] = b.getInt();
+        s.color[p] = b.getInt();
+        s.restSteps[p] = b.getInt();
+        s.id[p] = b.getInt();
+        byte flags = b.get();
+        s.contact[p] = (flags & 1) != 0;
+        s.onFloor[p] = (flags & 2) != 0;
+    }
+}
@@ -0,0 +1,113 @@
+package distributed;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+
+import io.Checkpoint;
+import io.Scenario;
+import physics.ParticleStore;
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * One process of a distributed run, usually started by DistributedRunner.
+ * Usage: java distributed.SlabWorker --rank r --workers n --seed s [--transport socket|files] [--host address]
+ *                                    [--port base] [--dir mailboxes] [--frames n] [--scenario file] [--set name=value]
+ *                                    [--save prefix]
+ * Every worker builds the same seeded starting layout, keeps its own slab of it (see SlabDomain) and runs
+ * the frames, then prints its particle count and position sums for the runner to add up.
+ * --save writes the worker's particles to the checkpoint prefix.r at the end.
+ */
+public class SlabWorker {
+
+    public static void main(String[] args) throws IOException {
+        SimulationConfig config = new SimulationConfig();
+        int rank = -1, workers = -1, port = 7400, frames = 600;
+        String transportName = "socket";
+        InetAddress host = InetAddress.getLoopbackAddress();
+        Path dir = null, save = null;
+        Scenario scenario = null;
+
+        for (int i = 0; i < args.length; ++i){
+            String arg = args[i];
+            if (i + 1 >= args.length){usage("missing value for " + arg);}
+            String value = args[++i];
+            switch (arg) {
+                case "--rank": rank = Integer.parseInt(value); break;
+                case "--workers": workers = Integer.parseInt(value); break;
+                case "--transport": transportName = value; break;
+                case "--host": host = InetAddress.getByName(value); break;
+                case "--port": port = Integer.parseInt(value); break;
+                case "--dir": dir = Path.of(value); break;
+                case "--frames": frames = Integer.parseInt(value); break;
+                case "--seed": config.seed = Long.parseLong(value); break;
+                case "--save": save = Path.of(value); break;
+                case "--scenario":
+                    try {
+                        scenario = Scenario.load(Path.of(value), config);
+                    } catch (IOException e) {
+                        usage(e.getMessage());
+                    }
+                    break;
+                case "--set":
+                    int split = value.indexOf('=');
+                    if (split < 0){usage("--set expects name=value");}
+                    try {
+                        Scenario.set(config, value.substring(0, split).trim(), value.substring(split + 1));
+                    } catch (IllegalArgumentException e) {
+                        usage("--set " + value + ": " + e.getMessage());
+                    }
+                    break;
+                default: usage("unknown option " + arg);
+            }
+        }
+        if (workers < 1 || rank < 0 || rank >= workers){usage("need --workers n and --rank in [0, n)");}
+        if (config.seed == 0){usage("need --seed, every worker has to start from the same layout");}
+        if (transportName.equals("files") && dir == null){usage("--transport files needs --dir");}
+        config.minSubSteps = 0; //every worker exchanges after each of the same number of substeps
+        try {
+            config.validate();
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+        }
+
+        try (Transport transport = transportName.equals("socket") ? new SocketTransport(rank, workers, host, port)
+                : transportName.equals("files") ? new MappedFileTransport(rank, workers, dir)
+                : null;
+             Simulation simulation = scenario != null ? scenario.create() : new Simulation(config)) {
+            if (transport == null){usage("unknown transport " + transportName);}
+            SlabDomain domain;
+            try {
+                domain = SlabDomain.of(transport, simulation);
+            } catch (IllegalArgumentException e) {
+                usage(e.getMessage());
+                return;
+            }
+            domain.keepOwned(simulation);
+            simulation.setDomain(domain);
+
+            long start = System.nanoTime();
+            simulation.step(frames);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            ParticleStore s = simulation.getParticles();
+            double sx = 0, sy = 0;
+            for (int i = 1; i < s.count; ++i){
+                sx += s.x[i];
+                sy += s.y[i];
+            }
+            double exchange = simulation.getMetrics().getPhaseMeanMillis().get("exchange");
+            System.out.printf("worker %d: particles %d, migrated %d, time %.3fs, exchange %.3f ms/frame%n",
+                rank, s.count - 1, domain.getMigrated(), seconds, exchange);
+            System.out.printf("sums %d %d %.9f %.9f%n", rank, s.count - 1, sx, sy);
+            if (save != null){Checkpoint.save(simulation, Path.of(save + "." + rank));}
+        }
+    }
+
+    private static void usage(String message){
+        System.err.println(message);
+        System.err.println("usage: SlabWorker --rank r --workers n --seed s [--transport socket|files] [--host address] [--port base] [--dir mailboxes] [--frames n] [--scenario file] [--set name=value] [--save prefix]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,108 @@
+package distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Transport over TCP, one connection per pair of neighbouring workers.
+ * Worker r listens on basePort + r for worker r + 1 and connects to basePort + r - 1, retrying
+ * until worker r - 1 is up. Messages are length prefixed. Works across machines given a host, the
+ * default loopback address keeps a run on one machine.
+ */
+public class SocketTransport implements Transport {
+    private static final int CONNECT_TIMEOUT = 30_000; //ms to wait for the left neighbour to start listening
+
+    private final int rank, workers;
+    private final Socket[] sockets = new Socket[2]; //left, right
+    private final DataInputStream[] in = new DataInputStream[2];
+    private final DataOutputStream[] out = new DataOutputStream[2];
+    private final ByteBuffer[] received = new ByteBuffer[2];
+
+    public SocketTransport(int rankValue, int workersValue, InetAddress host, int basePort) throws IOException {
+        rank = rankValue;
+        workers = workersValue;
+        try (ServerSocket server = rank + 1 < workers ? new ServerSocket(basePort + rank, 1, host) : null) {
+            if (rank > 0){open(0, connect(host, basePort + rank - 1));}
+            if (server != null){open(1, server.accept());}
+        }
+    }
+
+    private static Socket connect(InetAddress host, int port) throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        while (true) {
+            try {
+                return new Socket(host, port);
+            } catch (ConnectException e) { //not listening yet
+                if (System.currentTimeMillis() > deadline){throw e;}
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while connecting to port " + port);
+                }
+            }
+        }
+    }
+
+    private void open(int side, Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        sockets[side] = socket;
+        in[side] = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        out[side] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        received[side] = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private int side(int peer){
+        if (peer == rank - 1 && sockets[0] != null){return 0;}
+        if (peer == rank + 1 && sockets[1] != null){return 1;}
+        throw new IllegalArgumentException("worker " + rank + " is not connected to " + peer);
+    }
+
+    @Override
+    public int rank(){
+        return rank;
+    }
+
+    @Override
+    public int workers(){
+        return workers;
+    }
+
+    @Override
+    public void send(int peer, ByteBuffer message) throws IOException {
+        DataOutputStream o = out[side(peer)];
+        o.writeInt(message.remaining());
+        o.write(message.array(), message.arrayOffset() + message.position(), message.remaining());
+        o.flush();
+    }
+
+    @Override
+    public ByteBuffer receive(int peer) throws IOException {
+        int side = side(peer);
+        int length = in[side].readInt();
+        ByteBuffer b = received[side];
+        if (b.capacity() < length){
+            b = ByteBuffer.allocate(Math.max(length, b.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+            received[side] = b;
+        }
+        in[side].readFully(b.array(), 0, length);
+        b.clear().limit(length);
+        return b;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Socket socket : sockets){
+            if (socket != null){socket.close();}
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package distributed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries messages between the workers of a distributed run (see SlabDomain).
+ * Workers are numbered 0 .. workers - 1 and only talk to the ones next to them. Messages from one
+ * worker to another arrive whole and in order. send() may block until the peer has taken the previous
+ * message, receive() blocks until one arrives.
+ */
+public interface Transport extends AutoCloseable {
+    int rank();
+
+    int workers();
+
+    void send(int peer, ByteBuffer message) throws IOException; //sends position .. limit
+
+    ByteBuffer receive(int peer) throws IOException; //valid until the next receive() from the same peer
+
+    @Override
+    void close() throws IOException;
+}
@@ -3,9 +3,15 @@ package graphics;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.MouseInfo;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 import javax.swing.JFrame;
 
+import physics.PointerSlot;
+
 
 /**
  * Display acts as the main surface to render graphics to. 
@@ -17,6 +23,7 @@ public class Display{
 
     private JFrame display;
     private RenderPanel panel;
+    private Rasterizer rasterizer;
 
     public Display(int screenWidth, int screenHeight){
         this.screenWidth = screenWidth;
@@ -30,6 +37,8 @@ public class Display{
         display.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         display.setResizable(false);
         
+        rasterizer = new Rasterizer(panel.getPixels(), screenWidth, screenHeight);
+
         display.add(panel);
         display.pack(); //Force correct sizing
 
@@ -38,7 +47,11 @@ public class Display{
     }
 
     public void update(){
-        panel.repaint();
+        panel.present();
+    }
+
+    public Rasterizer getRasterizer(){ //draws straight into the pixels, much faster than drawCircle for many circles
+        return rasterizer;
     }
 
     public void drawCircle(int x, int y, int radius, Color color){
@@ -89,6 +102,27 @@ public class Display{
         return this.screenHeight;
     }
 
+    /**
+     * Publishes the mouse position over the panel into slot from the EDT, so other threads
+     * can read it without calling into AWT. The slot is cleared when the mouse leaves the window.
+     */
+    public void trackPointer(PointerSlot slot){
+        MouseAdapter listener = new MouseAdapter() {
+            public void mouseMoved(MouseEvent e){slot.publish(e.getX(), e.getY());}
+            public void mouseDragged(MouseEvent e){slot.publish(e.getX(), e.getY());}
+            public void mouseEntered(MouseEvent e){slot.publish(e.getX(), e.getY());}
+            public void mouseExited(MouseEvent e){slot.clear();}
+        };
+        panel.addMouseListener(listener);
+        panel.addMouseMotionListener(listener);
+    }
+
+    public void onKey(char key, Runnable action){ //runs action on the EDT whenever key is typed in the window
+        display.addKeyListener(new KeyAdapter() {
+            public void keyTyped(KeyEvent e){if (Character.toLowerCase(e.getKeyChar()) == key){action.run();}}
+        });
+    }
+
     public double getMouseX(){
         return MouseInfo.getPointerInfo().getLocation().getX() - display.getLocationOnScreen().getX() - 8;
     }
@@ -0,0 +1,99 @@
+package graphics;
+
+import java.util.Arrays;
+
+/**
+ * Software rasterizer that writes straight into an int RGB pixel array.
+ * Filled discs are drawn from span tables computed once per radius, so drawing a particle is
+ * one Arrays.fill per row. Colour maps are lookup tables and motion blur is an in place decay,
+ * so a frame allocates nothing.
+ */
+public class Rasterizer {
+    private static final int PALETTE_SIZE = 1024;
+    private static final double MAX_TEMPERATURE = 255.0 / 55; //every channel of the fire colour map is saturated past this
+
+    private final int[] pixels;
+    private final int width, height;
+
+    private int[][] spans = new int[0][]; //spans[r] holds a [left, right) pair per row of a disc of radius r
+
+    private final int[] velocityPalette = new int[PALETTE_SIZE]; //indexed by squared speed
+    private final int[] temperaturePalette = new int[PALETTE_SIZE];
+
+    public Rasterizer(int[] pixels, int width, int height){
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+
+        for (int i = 0; i < PALETTE_SIZE; ++i){
+            double v = Math.sqrt((double) i / PALETTE_SIZE) * 255;
+            velocityPalette[i] = ((int) v) << 16;
+
+            double t = (double) i / (PALETTE_SIZE - 1) * MAX_TEMPERATURE;
+            int r = (int) Math.min(255, t*155), g = (int) Math.min(255, t*75), b = (int) Math.min(255, t*55);
+            temperaturePalette[i] = (r << 16) | (g << 8) | b;
+        }
+    }
+
+    public int velocityColor(double vx, double vy){ //red, brighter the faster, saturates at a speed of 1
+        int i = (int) ((vx * vx + vy * vy) * PALETTE_SIZE);
+        return velocityPalette[i < PALETTE_SIZE ? i : PALETTE_SIZE - 1];
+    }
+
+    public int temperatureColor(double temperature){ //fire colour map
+        int i = (int) (temperature * ((PALETTE_SIZE - 1) / MAX_TEMPERATURE));
+        if (i < 0){i = 0;}
+        return temperaturePalette[i < PALETTE_SIZE ? i : PALETTE_SIZE - 1];
+    }
+
+    private int[] spans(int radius){
+        if (radius >= spans.length){
+            spans = Arrays.copyOf(spans, radius + 1);
+        }
+        int[] table = spans[radius];
+        if (table == null){ //same coverage as fillOval(x - r, y - r, 2r, 2r): pixel centres inside the circle
+            table = new int[radius * 4];
+            for (int row = 0; row < radius * 2; ++row){
+                double dy = row + 0.5 - radius;
+                double w = Math.sqrt(Math.max(0, radius * radius - dy * dy));
+                table[row * 2] = (int) Math.round(radius - w);
+                table[row * 2 + 1] = (int) Math.round(radius + w);
+            }
+            spans[radius] = table;
+        }
+        return table;
+    }
+
+    public void drawDisc(int x, int y, int radius, int rgb){
+        if (radius <= 0){return;}
+        int[] table = spans(radius);
+        int left = x - radius, top = y - radius;
+        if (left >= width || top >= height || left + radius * 2 <= 0 || top + radius * 2 <= 0){return;}
+
+        int rowFrom = Math.max(0, -top), rowTo = Math.min(radius * 2, height - top);
+        for (int row = rowFrom; row < rowTo; ++row){
+            int from = Math.max(0, left + table[row * 2]);
+            int to = Math.min(width, left + table[row * 2 + 1]);
+            if (from < to){
+                int offset = (top + row) * width;
+                Arrays.fill(pixels, offset + from, offset + to, rgb);
+            }
+        }
+    }
+
+    public void decay(double keep){ //motion blur, scales every channel by keep in place
+        int f = (int) (Math.max(0, Math.min(1, keep)) * 256);
+        if (f >= 256){return;}
+        if (f == 0){
+            Arrays.fill(pixels, 0);
+            return;
+        }
+        int[] p = pixels;
+        for (int i = 0; i < p.length; ++i){
+            int c = p[i];
+            int rb = ((c & 0xFF00FF) * f >>> 8) & 0xFF00FF;
+            int g = ((c & 0x00FF00) * f >>> 8) & 0x00FF00;
+            p[i] = rb | g;
+        }
+    }
+}
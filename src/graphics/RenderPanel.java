@@ -3,6 +3,7 @@ package graphics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.Dimension;
 
 import javax.swing.JPanel;
@@ -10,24 +11,42 @@ import javax.swing.JPanel;
 /**
  * A modified JPanel in order to allow easy graphics rendering. 
  * All graphics are drawn onto the BufferedImage "surface" through the Graphics2D attribute.
- * Updates are shown when repaint() is called
+ * Updates are shown when present() is called, which copies the surface to a second image
+ * so the EDT never paints a half drawn frame.
  */
 public class RenderPanel extends JPanel{
 
     private BufferedImage surface;
+    private BufferedImage presented;
     private Graphics2D g2;
 
     public RenderPanel(int screenWidth, int screenHeight){
         setPreferredSize(new Dimension(screenWidth, screenHeight));
         surface = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_RGB);
+        presented = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_RGB);
         g2 = (Graphics2D) surface.getGraphics(); //Get graphics context
     }
 
     public void paintComponent(Graphics g){
-        g.drawImage(surface, 0, 0, null);
+        synchronized (presented) {
+            g.drawImage(presented, 0, 0, null);
+        }
+    }
+
+    public void present(){ //callable from any thread
+        int[] source = getPixels();
+        int[] target = ((DataBufferInt) presented.getRaster().getDataBuffer()).getData();
+        synchronized (presented) {
+            System.arraycopy(source, 0, target, 0, source.length);
+        }
+        repaint();
     }
 
     public Graphics2D getGraphics2D(){
         return g2;
     }
+
+    public int[] getPixels(){ //backing array of surface, one RGB int per pixel, row major
+        return ((DataBufferInt) surface.getRaster().getDataBuffer()).getData();
+    }
 }
@@ -0,0 +1,170 @@
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import physics.Emitters;
+import physics.ParticleStore;
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * Binary save and restore of a whole Simulation.
+ * Layout (little endian): a header with the magic, version, particle count, clock, every public
+ * SimulationConfig field by name, the random seed, substep counter, adaptive substep count and calm frames and next particle id, then one 8 byte
+ * aligned section per particle array (x, y, lastx, lasty, mass, temperature, restx, resty as doubles,
+ * radius, color, restSteps and id as ints, contact as bytes), then the emitters and sinks (slots in use,
+ * totals and limit, then every slot's rectangle, rate, velocity, credit, radius, color and active flag).
+ * The store is compacted first, so only live particles are written.
+ * The sections are written and read through memory mapped regions of a FileChannel, so large
+ * states move at disk speed with one bulk copy per array.
+ * Fields added through Simulation.getForces() are not saved, see there.
+ */
+public class Checkpoint {
+    private static final int MAGIC = 0x4D495350; //"PSIM"
+    private static final int VERSION = 7;
+    private static final int EMITTER_BYTES = 8 * 8 + 2 * 4 + 1;
+
+    public static void save(Simulation simulation, Path path) throws IOException {
+        ParticleStore s = simulation.getParticles();
+        if (s.liveCount() != s.count){ //removed slots would come back as live particles
+            s.compact();
+            simulation.rebuildGrid();
+        }
+        int n = s.count;
+
+        ByteBuffer header = writeHeader(simulation);
+        long offset = align(header.remaining());
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(header, 0);
+
+            for (double[] array : new double[][] {s.x, s.y, s.lastx, s.lasty, s.mass, s.temperature, s.restx, s.resty}){
+                MappedByteBuffer section = map(channel, FileChannel.MapMode.READ_WRITE, offset, n * 8L);
+                section.asDoubleBuffer().put(array, 0, n);
+                section.force();
+                offset += n * 8L;
+            }
+            for (int[] array : new int[][] {s.radius, s.color, s.restSteps, s.id}){
+                MappedByteBuffer section = map(channel, FileChannel.MapMode.READ_WRITE, offset, n * 4L);
+                section.asIntBuffer().put(array, 0, n);
+                section.force();
+                offset += align(n * 4L);
+            }
+            MappedByteBuffer contact = map(channel, FileChannel.MapMode.READ_WRITE, offset, n);
+            for (int i = 0; i < n; ++i){contact.put((byte) (s.contact[i] ? 1 : 0));}
+            contact.force();
+            offset += align(n);
+
+            Emitters e = simulation.getEmitters();
+            MappedByteBuffer flows = map(channel, FileChannel.MapMode.READ_WRITE, offset, 4 + 8 + 8 + 4 + (long) e.count * EMITTER_BYTES);
+            flows.putInt(e.count).putLong(e.spawned).putLong(e.removed).putInt(e.limit);
+            for (int i = 0; i < e.count; ++i){
+                flows.putDouble(e.x[i]).putDouble(e.y[i]).putDouble(e.width[i]).putDouble(e.height[i]);
+                flows.putDouble(e.rate[i]).putDouble(e.vx[i]).putDouble(e.vy[i]).putDouble(e.credit[i]);
+                flows.putInt(e.radius[i]).putInt(e.color[i]).put((byte) (e.active[i] ? 1 : 0));
+            }
+            flows.force();
+        }
+    }
+
+    public static Simulation load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer head = map(channel, FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 1 << 16));
+            if (head.getInt() != MAGIC){throw new IOException(path + " is not a checkpoint");}
+            int version = head.getInt();
+            if (version != VERSION){throw new IOException("unsupported checkpoint version " + version);}
+
+            int n = head.getInt();
+            double time = head.getDouble();
+            long frame = head.getLong();
+            boolean gracePeriodEnded = head.get() != 0;
+
+            SimulationConfig config = new SimulationConfig();
+            ConfigCodec.read(head, config);
+            config.numParticles = Math.max(config.numParticles, n);
+
+            Simulation simulation = new Simulation(config, false);
+            ParticleStore s = simulation.getParticles();
+            s.probabilityOfTransfer = head.getDouble();
+            s.floorTempGain = head.getDouble();
+            s.maxTemp = head.getDouble();
+            s.seed = head.getLong();
+            s.step = head.getLong();
+            simulation.restoreSubSteps(head.getInt(), head.getInt());
+            s.nextId = head.getInt();
+
+            long offset = align(head.position());
+            for (double[] array : new double[][] {s.x, s.y, s.lastx, s.lasty, s.mass, s.temperature, s.restx, s.resty}){
+                map(channel, FileChannel.MapMode.READ_ONLY, offset, n * 8L).asDoubleBuffer().get(array, 0, n);
+                offset += n * 8L;
+            }
+            for (int[] array : new int[][] {s.radius, s.color, s.restSteps, s.id}){
+                map(channel, FileChannel.MapMode.READ_ONLY, offset, n * 4L).asIntBuffer().get(array, 0, n);
+                offset += align(n * 4L);
+            }
+            MappedByteBuffer contact = map(channel, FileChannel.MapMode.READ_ONLY, offset, n);
+            for (int i = 0; i < n; ++i){s.contact[i] = contact.get() != 0;}
+            offset += align(n);
+            s.count = n;
+
+            Emitters e = simulation.getEmitters();
+            MappedByteBuffer flows = map(channel, FileChannel.MapMode.READ_ONLY, offset, channel.size() - offset);
+            int emitters = flows.getInt();
+            if (emitters > e.x.length){throw new IOException("checkpoint has " + emitters + " emitters, emitterCapacity is " + e.x.length);}
+            e.spawned = flows.getLong();
+            e.removed = flows.getLong();
+            e.limit = flows.getInt();
+            for (int i = 0; i < emitters; ++i){
+                e.x[i] = flows.getDouble();
+                e.y[i] = flows.getDouble();
+                e.width[i] = flows.getDouble();
+                e.height[i] = flows.getDouble();
+                e.rate[i] = flows.getDouble();
+                e.vx[i] = flows.getDouble();
+                e.vy[i] = flows.getDouble();
+                e.credit[i] = flows.getDouble();
+                e.radius[i] = flows.getInt();
+                e.color[i] = flows.getInt();
+                e.active[i] = flows.get() != 0;
+            }
+            e.count = emitters;
+            Arrays.fill(s.vx, 0, n, 0); //velocities are recomputed from x - lastx on the next step
+            Arrays.fill(s.vy, 0, n, 0);
+
+            simulation.restoreClock(time, frame, gracePeriodEnded);
+            simulation.rebuildGrid();
+            return simulation;
+        }
+    }
+
+    private static ByteBuffer writeHeader(Simulation simulation){
+        ByteBuffer b = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        ParticleStore s = simulation.getParticles();
+        b.putInt(MAGIC).putInt(VERSION).putInt(s.count);
+        b.putDouble(simulation.getTime()).putLong(simulation.getFrameCount());
+        b.put((byte) (simulation.isGracePeriodEnded() ? 1 : 0));
+        ConfigCodec.write(b, simulation.config);
+        b.putDouble(s.probabilityOfTransfer).putDouble(s.floorTempGain).putDouble(s.maxTemp);
+        b.putLong(s.seed).putLong(s.step).putInt(simulation.getSubSteps()).putInt(simulation.getCalmFrames()).putInt(s.nextId);
+        b.flip();
+        return b;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long offset, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, offset, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static long align(long n){
+        return (n + 7) & ~7L;
+    }
+}
@@ -0,0 +1,67 @@
+package io;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import physics.SimulationConfig;
+
+/**
+ * Writes every public SimulationConfig field as (name, type tag, 8 byte value) so the binary
+ * formats in this package keep loading when config fields are added or removed.
+ */
+class ConfigCodec {
+    private static Field[] fields(){ //every public, non static config field in a stable order
+        return Arrays.stream(SimulationConfig.class.getFields())
+            .filter(f -> !Modifier.isStatic(f.getModifiers()))
+            .sorted(Comparator.comparing(Field::getName))
+            .toArray(Field[]::new);
+    }
+
+    static void write(ByteBuffer b, SimulationConfig config){
+        try {
+            Field[] fields = fields();
+            b.putInt(fields.length);
+            for (Field f : fields){
+                byte[] name = f.getName().getBytes(StandardCharsets.UTF_8);
+                b.putShort((short) name.length).put(name);
+                Class<?> type = f.getType();
+                if (type == int.class){b.put((byte) 'I').putLong(f.getInt(config));
+                } else if (type == long.class){b.put((byte) 'J').putLong(f.getLong(config));
+                } else if (type == double.class){b.put((byte) 'D').putDouble(f.getDouble(config));
+                } else if (type == boolean.class){b.put((byte) 'Z').putLong(f.getBoolean(config) ? 1 : 0);
+                } else {b.put((byte) '?').putLong(0);} //not a primitive, not saved
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void read(ByteBuffer b, SimulationConfig config){ //unknown fields are skipped, missing ones keep their default
+        int count = b.getInt();
+        try {
+            for (int i = 0; i < count; ++i){
+                byte[] name = new byte[b.getShort()];
+                b.get(name);
+                char tag = (char) b.get();
+                long bits = b.getLong();
+                Field f;
+                try {
+                    f = SimulationConfig.class.getField(new String(name, StandardCharsets.UTF_8));
+                } catch (NoSuchFieldException e) {
+                    continue;
+                }
+                Class<?> type = f.getType();
+                if (tag == 'I' && type == int.class){f.setInt(config, (int) bits);
+                } else if (tag == 'J' && type == long.class){f.setLong(config, bits);
+                } else if (tag == 'D' && type == double.class){f.setDouble(config, Double.longBitsToDouble(bits));
+                } else if (tag == 'Z' && type == boolean.class){f.setBoolean(config, bits != 0);}
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
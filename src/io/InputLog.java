@@ -0,0 +1,94 @@
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * Log of everything a run depends on besides its config: the seed, then the dt and pointer position of every frame.
+ * Since the simulation is bit exact for a given seed and input, replaying the log regenerates the
+ * run exactly, at a few bytes per frame instead of storing the particles.
+ * Only runs that start from a freshly constructed Simulation can be replayed.
+ *
+ * Layout (little endian): magic, version, seed, config (see ConfigCodec), then (dt, packed pointer) per frame.
+ */
+public class InputLog {
+    static final int MAGIC = 0x474C4E49; //"INLG"
+    static final int VERSION = 1;
+    private static final int RECORD_SIZE = 8 + 8;
+    private static final int BATCH = 256; //records read at a time when replaying
+
+    /**
+     * Steps a simulation and logs the input of every frame. Use update() instead of Simulation.update().
+     * Every record is written before its frame runs, so a window closed with System.exit loses nothing that ran.
+     */
+    public static class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        public Writer(Path path, Simulation simulation) throws IOException {
+            if (simulation.getFrameCount() != 0){throw new IllegalStateException("input can only be logged from the first frame");}
+            if (simulation.getEmitters().count != 0){throw new IllegalStateException("emitters and sinks are not logged, the replay would differ");}
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(simulation.getSeed());
+            ConfigCodec.write(header, simulation.config);
+            header.flip();
+            while (header.hasRemaining()){channel.write(header);}
+        }
+
+        public void update(Simulation simulation, double dt) throws IOException {
+            long pointer = simulation.getPointer().read();
+            record.clear();
+            record.putDouble(dt).putLong(pointer).flip();
+            while (record.hasRemaining()){channel.write(record);} //16 bytes a frame, nothing next to the frame itself
+            simulation.update(dt, pointer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public static Simulation replay(Path path) throws IOException { //runs every logged frame and returns the resulting simulation
+        return replay(path, Long.MAX_VALUE);
+    }
+
+    public static Simulation replay(Path path, long maxFrames) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 1 << 16));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC){throw new IOException(path + " is not an input log");}
+            int version = header.getInt();
+            if (version != VERSION){throw new IOException("unsupported input log version " + version);}
+            long seed = header.getLong();
+
+            SimulationConfig config = new SimulationConfig();
+            ConfigCodec.read(header, config);
+            config.seed = seed;
+            Simulation simulation = new Simulation(config);
+
+            ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * BATCH).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(header.position());
+            long frames = 0;
+            while (frames < maxFrames && channel.read(records) > 0){
+                records.flip();
+                while (records.remaining() >= RECORD_SIZE && frames < maxFrames){
+                    double dt = records.getDouble();
+                    long pointer = records.getLong();
+                    simulation.update(dt, pointer);
+                    ++frames;
+                }
+                records.compact();
+            }
+            return simulation;
+        }
+    }
+}
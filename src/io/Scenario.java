@@ -0,0 +1,212 @@
+package io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import physics.Emitters;
+import physics.ParticleStore;
+import physics.Simulation;
+import physics.SimulationConfig;
+
+/**
+ * A run described in a properties file instead of code, so tuning and sweeps need no recompiling.
+ * Every public SimulationConfig field can be set by name (numParticles = 20000, gridMode = 2, ...),
+ * plus these keys:
+ *   layout = spiral | lattice | random | file   where the particles start, a number works too
+ *   particles = pile.csv   one "x, y, radius[, rrggbb]" per line ('#' starts a comment), relative to the
+ *                          scenario file, implies layout = file and sets numParticles and maxParticleRadius
+ *   autoTune = true | n    SimulationConfig.autoTune() for all cores or n cores, after the other keys
+ *   emitter.name = x, y, width, height, rate, radius[, vx, vy[, rrggbb]]   spawns rate particles per frame in
+ *                          the rectangle, moving at (vx, vy) px per frame (see physics.Emitters), raises
+ *                          maxParticleRadius to radius
+ *   sink.name = x, y, width, height[, rate]   removes up to rate particles per frame inside the rectangle,
+ *                          everything that enters it without a rate
+ * The config is validated once everything is applied. Runs from a particle file or with emitters and sinks
+ * cannot be replayed from an InputLog, which only knows the config.
+ */
+public class Scenario {
+    private static final List<String> LAYOUTS = List.of("spiral", "lattice", "random");
+
+    public final SimulationConfig config;
+    private double[] x, y; //particles from a file, null for the generated layouts
+    private int[] radius, color;
+    private int count;
+    private final List<double[]> emitters = new ArrayList<>(), sinks = new ArrayList<>(); //in key order
+
+    private Scenario(SimulationConfig config){
+        this.config = config;
+    }
+
+    public static Scenario load(Path path) throws IOException {
+        return load(path, new SimulationConfig());
+    }
+
+    public static Scenario load(Path path, SimulationConfig config) throws IOException { //applies the file on top of config
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(path)) {
+            properties.load(in);
+        }
+        Scenario scenario = new Scenario(config);
+        String autoTune = properties.getProperty("autoTune", "false").trim();
+        List<String> keys = new ArrayList<>(new TreeSet<>(properties.stringPropertyNames()));
+        if (keys.remove("particles")){keys.add(0, "particles");} //first, so layout = file can check for it
+        for (String key : keys){
+            String value = properties.getProperty(key).trim();
+            try {
+                switch (key) {
+                    case "layout": scenario.setLayout(value); break;
+                    case "particles": scenario.readParticles(path.resolveSibling(value)); break;
+                    case "autoTune": if (!value.equals("true") && !value.equals("false")){Integer.parseInt(value);} break;
+                    default:
+                        if (key.startsWith("emitter.")){scenario.emitters.add(numbers(value, 6, 9));
+                        } else if (key.startsWith("sink.")){scenario.sinks.add(numbers(value, 4, 5));
+                        } else {set(config, key, value);}
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException(path + ": " + key + ": " + e.getMessage(), e);
+            }
+        }
+        if (scenario.x != null){
+            config.numParticles = scenario.count + 1;
+            for (int i = 0; i < scenario.count; ++i){config.maxParticleRadius = Math.max(config.maxParticleRadius, scenario.radius[i]);}
+        }
+        for (double[] e : scenario.emitters){config.maxParticleRadius = Math.max(config.maxParticleRadius, (int) e[5]);}
+        if (scenario.emitters.size() + scenario.sinks.size() > config.emitterCapacity){
+            throw new IOException(path + ": more emitters and sinks than emitterCapacity " + config.emitterCapacity);
+        }
+        if (!autoTune.equals("false")){config.autoTune(autoTune.equals("true") ? 0 : Integer.parseInt(autoTune));}
+        try {
+            config.validate();
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+        return scenario;
+    }
+
+    public static void set(SimulationConfig config, String name, String value){ //one config field from text, IllegalArgumentException when unknown or unparsable
+        value = value.trim();
+        Field f;
+        try {
+            f = SimulationConfig.class.getField(name);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("no such parameter");
+        }
+        if (Modifier.isStatic(f.getModifiers())){throw new IllegalArgumentException("no such parameter");}
+        try {
+            Class<?> type = f.getType();
+            if (type == int.class){f.setInt(config, Integer.parseInt(value));
+            } else if (type == long.class){f.setLong(config, Long.parseLong(value));
+            } else if (type == double.class){f.setDouble(config, Double.parseDouble(value));
+            } else if (type == boolean.class){
+                if (!value.equals("true") && !value.equals("false")){throw new IllegalArgumentException("expected true or false, got " + value);}
+                f.setBoolean(config, value.equals("true"));
+            } else {throw new IllegalArgumentException("cannot be set from text");}
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: " + value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double[] numbers(String value, int least, int most){ //an emitter or sink, the colour column is hex
+        String[] columns = Arrays.stream(value.split("[,\\s]+")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+        if (columns.length < least || columns.length > most){throw new IllegalArgumentException("expected " + least + " to " + most + " values, got " + columns.length);}
+        double[] numbers = new double[most];
+        for (int i = 0; i < columns.length; ++i){
+            try {
+                numbers[i] = i == 8 ? 0xFF000000 | Integer.parseUnsignedInt(columns[i], 16) : Double.parseDouble(columns[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number: " + columns[i]);
+            }
+        }
+        if (least == 6 && (numbers[5] < 1 || numbers[5] != (int) numbers[5])){throw new IllegalArgumentException("radius must be a whole number of at least 1");}
+        if (!(numbers[4] >= 0) || Double.isInfinite(numbers[4])){throw new IllegalArgumentException("rate must be a number of at least 0");}
+        if (least == 4 && columns.length == 4){numbers[4] = Double.POSITIVE_INFINITY;}
+        return numbers;
+    }
+
+    private void setLayout(String value){
+        if (value.equals("file")){
+            if (x == null){throw new IllegalArgumentException("layout = file needs a particles file");}
+            return;
+        }
+        int layout = LAYOUTS.indexOf(value);
+        if (layout < 0){
+            try {
+                layout = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("expected one of " + LAYOUTS + " or file, got " + value);
+            }
+        }
+        config.layout = layout;
+    }
+
+    private void readParticles(Path path){
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("cannot read " + path + ": " + e.getMessage());
+        }
+        x = new double[lines.size()];
+        y = new double[lines.size()];
+        radius = new int[lines.size()];
+        color = new int[lines.size()];
+        count = 0;
+        for (int line = 0; line < lines.size(); ++line){
+            String text = lines.get(line);
+            int comment = text.indexOf('#');
+            if (comment >= 0){text = text.substring(0, comment);}
+            if (text.isBlank()){continue;}
+            String[] columns = text.split("[,\\s]+");
+            columns = Arrays.stream(columns).filter(s -> !s.isEmpty()).toArray(String[]::new);
+            try {
+                if (columns.length < 3 || columns.length > 4){throw new IllegalArgumentException("expected x, y, radius[, rrggbb]");}
+                x[count] = Double.parseDouble(columns[0]);
+                y[count] = Double.parseDouble(columns[1]);
+                radius[count] = Integer.parseInt(columns[2]);
+                if (radius[count] < 1){throw new IllegalArgumentException("radius must be at least 1");}
+                color[count] = columns.length > 3 ? 0xFF000000 | Integer.parseUnsignedInt(columns[3], 16) : 0;
+            } catch (IllegalArgumentException e) { //NumberFormatException included
+                throw new IllegalArgumentException(path.getFileName() + " line " + (line + 1) + ": " + e.getMessage());
+            }
+            ++count;
+        }
+        if (count == 0){throw new IllegalArgumentException(path.getFileName() + " has no particles");}
+    }
+
+    public Simulation create(){ //a fresh simulation at frame 0
+        if (x == null){return addFlows(new Simulation(config));}
+
+        config.numParticles = count + 1; //in case it was changed after loading
+        Simulation simulation = new Simulation(config, false);
+        ParticleStore s = simulation.getParticles();
+        s.add(-1e9, -1e9, config.cursorSize, config.cursorStrength, 0xFFFFFFFF); //slot 0, taken over by the cursor
+        for (int i = 0; i < count; ++i){
+            int c = color[i] != 0 ? color[i] : Simulation.HSVtoRGB((double) i / count, 1, 1);
+            s.add(x[i], y[i], radius[i], 10 + radius[i], c);
+        }
+        simulation.rebuildGrid();
+        return addFlows(simulation);
+    }
+
+    public boolean isReplayable(){ //an InputLog of this run regenerates it, see the class comment
+        return x == null && emitters.isEmpty() && sinks.isEmpty();
+    }
+
+    private Simulation addFlows(Simulation simulation){
+        Emitters e = simulation.getEmitters();
+        for (double[] v : emitters){e.add(v[0], v[1], v[2], v[3], v[4], (int) v[5], v[6], v[7], (int) (long) v[8]);}
+        for (double[] v : sinks){e.addSink(v[0], v[1], v[2], v[3], v[4]);}
+        return simulation;
+    }
+}
@@ -0,0 +1,130 @@
+package io;
+
+import java.util.Arrays;
+
+import physics.ParticleStore;
+
+/**
+ * One frame of a trajectory: position, velocity and temperature of every particle.
+ * Values are quantized to the steps below when recorded, TrajectoryRecorder stores the
+ * quantized integers and TrajectoryReader turns them back into floats.
+ * Particles are stored by ParticleStore.id rather than by slot, so reordering the store between
+ * frames does not show up as every particle jumping (and does not break the delta encoding).
+ * Only live particles are stored, as rows in ascending id order (ids[0 .. rows)), so a frame is as
+ * big as the particle count however many ids emitters have handed out. The float arrays are indexed
+ * by id up to count = ParticleStore.nextId: ids that were removed (or belong to free slots) have alive
+ * false and read as zero everywhere.
+ */
+public class TrajectoryFrame {
+    public static final double POSITION_STEP = 1.0 / 64; //px
+    public static final double VELOCITY_STEP = 1.0 / 4096; //px per substep
+    public static final double TEMPERATURE_STEP = 1.0 / 256;
+    static final int CHANNELS = 5; //x, y, vx, vy, temperature
+
+    public long frame;
+    public double time; //ms of simulated time
+    public int count; //ids 0 to count - 1
+    public int rows; //live particles
+    public int[] ids = new int[0]; //id of each row, ascending
+    public float[] x = new float[0], y = new float[0];
+    public float[] vx = new float[0], vy = new float[0];
+    public float[] temperature = new float[0];
+    public boolean[] alive = new boolean[0];
+
+    long[][] quantized = new long[CHANNELS][0]; //x, y, vx, vy, temperature in steps, per row
+
+    private long[] order = new long[0]; //id and row packed for sorting
+    private int[] sortedIds = new int[0];
+    private long[][] sortedValues = new long[CHANNELS][0];
+    private int[] shown = new int[0]; //ids dequantize() set last, cleared again by the next call
+    private int shownCount = 0;
+
+    void ensureRows(int n){
+        if (ids.length < n){
+            int size = Math.max(n, ids.length * 2);
+            ids = Arrays.copyOf(ids, size);
+            for (int c = 0; c < CHANNELS; ++c){quantized[c] = Arrays.copyOf(quantized[c], size);}
+        }
+    }
+
+    void quantize(ParticleStore s, long frameNumber, double simulationTime){
+        ensureRows(s.count);
+        long[] qx = quantized[0], qy = quantized[1], qvx = quantized[2], qvy = quantized[3], qt = quantized[4];
+        int n = 0;
+        for (int i = 0; i < s.count; ++i){
+            if (s.id[i] < 0){continue;} //free slot
+            ids[n] = s.id[i];
+            qx[n] = Math.round(s.x[i] / POSITION_STEP);
+            qy[n] = Math.round(s.y[i] / POSITION_STEP);
+            qvx[n] = Math.round(s.vx[i] / VELOCITY_STEP);
+            qvy[n] = Math.round(s.vy[i] / VELOCITY_STEP);
+            qt[n] = Math.round(s.temperature[i] / TEMPERATURE_STEP);
+            ++n;
+        }
+        rows = n;
+        count = s.nextId;
+        frame = frameNumber;
+        time = simulationTime;
+    }
+
+    void sortRows(){ //slots are not in id order once emitters reuse them or the store is reordered
+        int n = rows;
+        boolean sorted = true;
+        for (int i = 1; i < n && sorted; ++i){sorted = ids[i - 1] < ids[i];}
+        if (sorted){return;}
+        if (order.length < n){
+            order = new long[ids.length];
+            sortedIds = new int[ids.length];
+            for (int c = 0; c < CHANNELS; ++c){sortedValues[c] = new long[ids.length];}
+        }
+        for (int i = 0; i < n; ++i){order[i] = (long) ids[i] << 32 | i;}
+        Arrays.sort(order, 0, n);
+        for (int i = 0; i < n; ++i){sortedIds[i] = (int) (order[i] >>> 32);}
+        int[] swapIds = ids;
+        ids = sortedIds;
+        sortedIds = swapIds;
+        for (int c = 0; c < CHANNELS; ++c){
+            long[] values = quantized[c], moved = sortedValues[c];
+            for (int i = 0; i < n; ++i){moved[i] = values[(int) order[i]];}
+            quantized[c] = moved;
+            sortedValues[c] = values;
+        }
+    }
+
+    static void match(int[] ids, int n, int[] previousIds, int previousRows, int[] rowOf){ //row of each id in the previous frame, -1 for new ones
+        int j = 0;
+        for (int i = 0; i < n; ++i){
+            while (j < previousRows && previousIds[j] < ids[i]){++j;}
+            rowOf[i] = j < previousRows && previousIds[j] == ids[i] ? j : -1;
+        }
+    }
+
+    void dequantize(){
+        if (x.length < count){
+            int size = Math.max(count, x.length * 2);
+            x = Arrays.copyOf(x, size);
+            y = Arrays.copyOf(y, size);
+            vx = Arrays.copyOf(vx, size);
+            vy = Arrays.copyOf(vy, size);
+            temperature = Arrays.copyOf(temperature, size);
+            alive = Arrays.copyOf(alive, size);
+        }
+        for (int i = 0; i < shownCount; ++i){ //ids removed since the last frame read
+            int k = shown[i];
+            x[k] = y[k] = vx[k] = vy[k] = temperature[k] = 0;
+            alive[k] = false;
+        }
+        for (int i = 0; i < rows; ++i){
+            int k = ids[i];
+            x[k] = (float) (quantized[0][i] * POSITION_STEP);
+            y[k] = (float) (quantized[1][i] * POSITION_STEP);
+            vx[k] = (float) (quantized[2][i] * VELOCITY_STEP);
+            vy[k] = (float) (quantized[3][i] * VELOCITY_STEP);
+            temperature[k] = (float) (quantized[4][i] * TEMPERATURE_STEP);
+            alive[k] = true;
+        }
+        if (shown.length < rows){shown = new int[ids.length];}
+        System.arraycopy(ids, 0, shown, 0, rows);
+        shownCount = rows;
+    }
+}
@@ -0,0 +1,133 @@
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access reader for files written by TrajectoryRecorder.
+ * The index at the end of the file gives the offset of every frame. Reading frame k decodes forward
+ * from the keyframe before it, or from the frame read last when reading in order, so sequential
+ * playback decodes each frame once.
+ */
+public class TrajectoryReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final long[] frames, offsets;
+    private final boolean[] key;
+
+    private final TrajectoryFrame current = new TrajectoryFrame();
+    private int[] ids = new int[0], rowOf = new int[0]; //the frame being decoded, swapped with current's afterwards
+    private long[][] values = new long[TrajectoryFrame.CHANNELS][0];
+    private int currentIndex = -1;
+    private ByteBuffer in = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    public TrajectoryReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        ByteBuffer header = read(0, TrajectoryRecorder.HEADER_SIZE);
+        if (header.getInt() != TrajectoryRecorder.MAGIC){throw new IOException(path + " is not a trajectory file");}
+        int version = header.getInt();
+        if (version != TrajectoryRecorder.VERSION){throw new IOException("unsupported trajectory version " + version);}
+
+        ByteBuffer footer = read(channel.size() - TrajectoryRecorder.FOOTER_SIZE, TrajectoryRecorder.FOOTER_SIZE);
+        long indexOffset = footer.getLong();
+        int entries = footer.getInt();
+        if (footer.getInt() != TrajectoryRecorder.MAGIC){throw new IOException(path + " has no index, the recorder was not closed");}
+
+        frames = new long[entries];
+        offsets = new long[entries];
+        key = new boolean[entries];
+        ByteBuffer index = read(indexOffset, entries * TrajectoryRecorder.INDEX_ENTRY_SIZE);
+        for (int i = 0; i < entries; ++i){
+            frames[i] = index.getLong();
+            offsets[i] = index.getLong();
+            key[i] = index.get() != 0;
+        }
+    }
+
+    public int getFrameCount(){
+        return frames.length;
+    }
+
+    public long getFrameNumber(int i){ //simulation frame the i-th recorded frame was taken at
+        return frames[i];
+    }
+
+    public TrajectoryFrame readFrame(int i) throws IOException { //the returned frame is reused by the next call
+        if (i < 0 || i >= frames.length){throw new IndexOutOfBoundsException("frame " + i + " of " + frames.length);}
+        int from = i;
+        while (!key[from]){--from;} //nearest keyframe at or before i
+        if (currentIndex >= from && currentIndex <= i){from = currentIndex + 1;} //already decoded part of the way
+        for (int k = from; k <= i; ++k){decode(k);}
+        current.dequantize();
+        return current;
+    }
+
+    private void decode(int k) throws IOException {
+        ByteBuffer length = read(offsets[k], 4);
+        ByteBuffer b = read(offsets[k], length.getInt());
+        b.getInt();
+        current.frame = b.getLong();
+        current.time = b.getDouble();
+        boolean keyframe = b.get() != 0;
+        int count = b.getInt(), n = b.getInt(), ranges = b.getInt();
+        if (ids.length < n || values[0].length < n){ //both swap with current's, so they can differ in size
+            int size = Math.max(n, ids.length * 2);
+            ids = new int[size];
+            for (int c = 0; c < TrajectoryFrame.CHANNELS; ++c){values[c] = new long[size];}
+        }
+        if (rowOf.length < n){rowOf = new int[ids.length];}
+        int row = 0, id = 0;
+        for (int r = 0; r < ranges; ++r){
+            id += (int) getVarLong(b);
+            for (long run = getVarLong(b); run > 0; --run){ids[row++] = id++;}
+        }
+        TrajectoryFrame.match(ids, n, current.ids, keyframe ? 0 : current.rows, rowOf);
+        for (int c = 0; c < TrajectoryFrame.CHANNELS; ++c){
+            long[] last = current.quantized[c], decoded = values[c];
+            for (int i = 0; i < n; ++i){
+                long z = getVarLong(b);
+                long delta = (z >>> 1) ^ -(z & 1);
+                decoded[i] = (rowOf[i] >= 0 ? last[rowOf[i]] : 0) + delta;
+            }
+            values[c] = last;
+            current.quantized[c] = decoded;
+        }
+        int[] swap = current.ids;
+        current.ids = ids;
+        ids = swap;
+        current.rows = n;
+        current.count = count;
+        currentIndex = k;
+    }
+
+    private ByteBuffer read(long position, int size) throws IOException {
+        if (in.capacity() < size){in = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);}
+        in.clear().limit(size);
+        while (in.hasRemaining()){
+            if (channel.read(in, position + in.position()) < 0){throw new IOException("unexpected end of trajectory file");}
+        }
+        in.flip();
+        return in;
+    }
+
+    static long getVarLong(ByteBuffer b){
+        long v = 0;
+        int shift = 0;
+        byte x;
+        do {
+            x = b.get();
+            v |= (long) (x & 0x7F) << shift;
+            shift += 7;
+        } while ((x & 0x80) != 0);
+        return v;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,225 @@
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import physics.ParticleStore;
+import physics.Simulation;
+
+/**
+ * Streams particle trajectories to a file from a background writer thread.
+ * record() only quantizes the state into a pooled frame and queues it, the writer thread sorts its rows
+ * by id, delta encodes each live particle against the same id in the previous written frame (zigzag
+ * varints, particles new since then against zero) and appends it to the file.
+ * Every keyframeInterval frames a keyframe is written against zero, so any frame can be decoded
+ * starting from the keyframe before it. An index of frame offsets is written at the end on close().
+ * When every pooled frame is queued the policy decides: BLOCK waits for the writer (backpressure),
+ * DROP skips the frame and counts it.
+ *
+ * File layout (little endian): header (magic, version, keyframe interval, quantization steps),
+ * frames (length, frame number, time, keyframe flag, count of ids, rows, id ranges, then the live ids as
+ * varint pairs of gap since the last range and length per range and the varint deltas per channel),
+ * index (frame number, offset, keyframe flag per frame), footer (index offset, entries, magic).
+ */
+public class TrajectoryRecorder implements AutoCloseable {
+    public enum Policy { BLOCK, DROP }
+
+    static final int MAGIC = 0x4A525450; //"PTRJ"
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 4 + 4 + 4 + 3 * 8;
+    static final int FRAME_HEADER_SIZE = 4 + 8 + 8 + 1 + 4 + 4 + 4;
+    static final int INDEX_ENTRY_SIZE = 8 + 8 + 1;
+    static final int FOOTER_SIZE = 8 + 4 + 4;
+
+    private static final TrajectoryFrame END = new TrajectoryFrame(); //queued by close() to stop the writer
+
+    private final FileChannel channel;
+    private final Policy policy;
+    private final int keyframeInterval;
+    private final ArrayBlockingQueue<TrajectoryFrame> free, full;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile IOException failure;
+    private boolean closed = false;
+
+    //writer thread only
+    private long[][] previous = new long[TrajectoryFrame.CHANNELS][0];
+    private int[] previousIds = new int[0], rowOf = new int[0];
+    private int previousRows = 0;
+    private long written = 0;
+    private ByteBuffer out = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+    private long[] indexFrames = new long[1024], indexOffsets = new long[1024];
+    private boolean[] indexKey = new boolean[1024];
+    private int indexCount = 0;
+
+    public TrajectoryRecorder(Path path, int queueDepth, int keyframeInterval, Policy policy) throws IOException {
+        this.policy = policy;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(this.keyframeInterval);
+        header.putDouble(TrajectoryFrame.POSITION_STEP).putDouble(TrajectoryFrame.VELOCITY_STEP).putDouble(TrajectoryFrame.TEMPERATURE_STEP);
+        header.flip();
+        while (header.hasRemaining()){channel.write(header);}
+        position = HEADER_SIZE;
+
+        free = new ArrayBlockingQueue<>(Math.max(1, queueDepth));
+        full = new ArrayBlockingQueue<>(Math.max(1, queueDepth) + 1);
+        for (int i = 0; i < Math.max(1, queueDepth); ++i){free.add(new TrajectoryFrame());}
+
+        writer = new Thread(this::writerLoop, "trajectory-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public boolean record(Simulation simulation){
+        return record(simulation.getParticles(), simulation.getFrameCount(), simulation.getTime());
+    }
+
+    public boolean record(ParticleStore particles, long frame, double time){ //call between frames, false if the frame was dropped
+        if (closed){throw new IllegalStateException("recorder is closed");}
+        TrajectoryFrame f;
+        if (policy == Policy.BLOCK){
+            try {
+                f = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        } else {
+            f = free.poll();
+        }
+        if (f == null){
+            dropped.incrementAndGet();
+            return false;
+        }
+        f.quantize(particles, frame, time);
+        full.add(f);
+        return true;
+    }
+
+    public long getDroppedFrames(){
+        return dropped.get();
+    }
+
+    private void writerLoop(){
+        try {
+            while (true){
+                TrajectoryFrame f = full.take();
+                if (f == END){return;}
+                if (failure == null){
+                    try {
+                        write(f);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                free.add(f);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(TrajectoryFrame f) throws IOException {
+        f.sortRows();
+        int n = f.rows;
+        boolean key = written % keyframeInterval == 0;
+
+        int worst = FRAME_HEADER_SIZE + n * (TrajectoryFrame.CHANNELS + 2) * 10;
+        if (out.capacity() < worst){out = ByteBuffer.allocate(worst).order(ByteOrder.LITTLE_ENDIAN);}
+        out.clear();
+        out.putInt(0).putLong(f.frame).putDouble(f.time).put((byte) (key ? 1 : 0)).putInt(f.count).putInt(n).putInt(0);
+
+        int[] ids = f.ids;
+        int ranges = 0, end = 0;
+        for (int i = 0; i < n;){ //runs of consecutive ids, one in the default scene, a few where sinks removed some
+            int start = i;
+            while (++i < n && ids[i] == ids[i - 1] + 1){}
+            putVarLong(out, ids[start] - end);
+            putVarLong(out, i - start);
+            end = ids[i - 1] + 1;
+            ++ranges;
+        }
+        out.putInt(FRAME_HEADER_SIZE - 4, ranges);
+
+        if (rowOf.length < n){rowOf = new int[ids.length];}
+        TrajectoryFrame.match(ids, n, previousIds, key ? 0 : previousRows, rowOf);
+        for (int c = 0; c < TrajectoryFrame.CHANNELS; ++c){
+            long[] values = f.quantized[c];
+            long[] last = previous[c];
+            for (int i = 0; i < n; ++i){
+                long delta = values[i] - (rowOf[i] >= 0 ? last[rowOf[i]] : 0);
+                putVarLong(out, (delta << 1) ^ (delta >> 63)); //zigzag, small deltas of either sign stay small
+            }
+        }
+        out.putInt(0, out.position());
+        out.flip();
+
+        addIndexEntry(f.frame, position, key);
+        while (out.hasRemaining()){position += channel.write(out, position);}
+
+        if (previousIds.length < n){
+            previousIds = new int[ids.length];
+            for (int c = 0; c < TrajectoryFrame.CHANNELS; ++c){previous[c] = new long[ids.length];}
+        }
+        System.arraycopy(ids, 0, previousIds, 0, n);
+        for (int c = 0; c < TrajectoryFrame.CHANNELS; ++c){System.arraycopy(f.quantized[c], 0, previous[c], 0, n);}
+        previousRows = n;
+        ++written;
+    }
+
+    private void addIndexEntry(long frame, long offset, boolean key){
+        if (indexCount == indexFrames.length){
+            indexFrames = Arrays.copyOf(indexFrames, indexCount * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexCount * 2);
+            indexKey = Arrays.copyOf(indexKey, indexCount * 2);
+        }
+        indexFrames[indexCount] = frame;
+        indexOffsets[indexCount] = offset;
+        indexKey[indexCount] = key;
+        ++indexCount;
+    }
+
+    static void putVarLong(ByteBuffer b, long v){
+        while ((v & ~0x7FL) != 0){
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    @Override
+    public void close() throws IOException { //flushes the queue, then writes the index
+        if (closed){return;}
+        closed = true;
+        try {
+            full.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (failure != null){throw failure;}
+            ByteBuffer index = ByteBuffer.allocate(indexCount * INDEX_ENTRY_SIZE + FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < indexCount; ++i){
+                index.putLong(indexFrames[i]).putLong(indexOffsets[i]).put((byte) (indexKey[i] ? 1 : 0));
+            }
+            index.putLong(position).putInt(indexCount).putInt(MAGIC);
+            index.flip();
+            while (index.hasRemaining()){position += channel.write(index, position);}
+        } finally {
+            channel.close();
+        }
+    }
+}
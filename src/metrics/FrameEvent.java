@@ -0,0 +1,60 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event spanning one simulation frame, with the same numbers SimulationMetrics records.
+ * Only filled in and committed while a recording has it enabled, e.g.
+ * java -XX:StartFlightRecording:filename=run.jfr ... then jfr print --events particlesim.Frame run.jfr
+ */
+@Name("particlesim.Frame")
+@Label("Simulation Frame")
+@Category("Particle Simulator")
+@Description("One frame of physics: all of its substeps")
+@StackTrace(false)
+public class FrameEvent extends jdk.jfr.Event {
+    @Label("Frame")
+    public long frame;
+
+    @Label("Substeps")
+    public int subSteps;
+
+    @Label("Integration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long integration;
+
+    @Label("Binning")
+    @Timespan(Timespan.NANOSECONDS)
+    public long binning;
+
+    @Label("Collisions")
+    @Timespan(Timespan.NANOSECONDS)
+    public long collisions;
+
+    @Label("Exchange")
+    @Timespan(Timespan.NANOSECONDS)
+    public long exchange;
+
+    @Label("Heat")
+    @Timespan(Timespan.NANOSECONDS)
+    public long heat;
+
+    @Label("Pairs Tested")
+    public long pairsTested;
+
+    @Label("Pairs Resolved")
+    public long pairsResolved;
+
+    @Label("Fullest Cell")
+    public int maxCellOccupancy;
+
+    @Label("Allocated")
+    @DataAmount
+    public long allocated;
+}
@@ -0,0 +1,85 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of non negative longs with log-linear buckets: every power of two is split
+ * into 4 buckets, so a percentile is within 25% of the true value whatever the range.
+ * Recording is a few atomic adds and never allocates, any thread may record or read at any time.
+ * Readers see each counter atomically but not the histogram as a whole, which is fine for monitoring.
+ */
+public class Histogram {
+    private static final int SUB_BUCKETS = 4; //per power of two
+    private static final int BUCKETS = 62 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private volatile long last;
+
+    static int bucket(long value){ //0..3 map to themselves, then 4 buckets per power of two
+        if (value < SUB_BUCKETS){return (int) Math.max(value, 0);}
+        int e = 63 - Long.numberOfLeadingZeros(value);
+        return (e - 1) * SUB_BUCKETS + (int) ((value >>> (e - 2)) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowerBound(int bucket){
+        if (bucket < SUB_BUCKETS){return bucket;}
+        int e = bucket / SUB_BUCKETS + 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (e - 2);
+    }
+
+    public void record(long value){
+        if (value < 0){value = 0;}
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        for (long seen = max.get(); value > seen && !max.compareAndSet(seen, value); seen = max.get()){}
+        last = value;
+    }
+
+    public long getCount(){
+        return count.get();
+    }
+
+    public long getMax(){
+        return max.get();
+    }
+
+    public long getLast(){ //most recently recorded value
+        return last;
+    }
+
+    public long getSum(){
+        return sum.get();
+    }
+
+    public double getMean(){
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    public long getPercentile(double q){ //upper end of the bucket holding the q-th value, q in [0, 1]
+        long n = count.get();
+        if (n == 0){return 0;}
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; ++b){
+            seen += counts.get(b);
+            if (seen >= rank){
+                long upper = b + 1 < BUCKETS ? lowerBound(b + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upper, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset(){ //not atomic with concurrent record() calls, one value may land on either side
+        for (int b = 0; b < BUCKETS; ++b){counts.set(b, 0);}
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,162 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per frame timings and counters of a running simulation, kept in lock free Histograms.
+ * The physics thread records integration, binning and collisions plus the counters once per frame,
+ * a renderer records render and present itself. Any thread may read at any time, through the
+ * fields, JMX (see register()) or the overlay lines from overlay().
+ */
+public class SimulationMetrics implements SimulationMetricsMXBean {
+    public static final int INTEGRATION = 0;
+    public static final int BINNING = 1;
+    public static final int COLLISIONS = 2;
+    public static final int RENDER = 3;
+    public static final int PRESENT = 4;
+    public static final int EXCHANGE = 5; //halo exchange with other workers, distributed runs only
+    public static final int HEAT = 6; //heat exchange between touching particles, see SimulationConfig.heatInterval
+    public static final String[] PHASE_NAMES = {"integration", "binning", "collisions", "render", "present", "exchange", "heat"};
+
+    public final Histogram[] phases = new Histogram[PHASE_NAMES.length]; //ns per frame
+    public final Histogram pairsTested = new Histogram(); //candidate pairs the grid handed to the narrow phase per frame
+    public final Histogram pairsResolved = new Histogram(); //pairs that were overlapping and got pushed apart per frame
+    public final Histogram cellOccupancy = new Histogram(); //particles in the fullest cell, sampled once per frame
+    public final Histogram subSteps = new Histogram();
+    public final Histogram substepDt = new Histogram(); //ns of simulated time per substep
+    public final Histogram allocatedBytes = new Histogram(); //by the simulation thread per frame
+
+    private volatile long since = System.nanoTime();
+
+    private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = THREADS instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported();
+
+    public SimulationMetrics(){
+        for (int i = 0; i < phases.length; ++i){phases[i] = new Histogram();}
+    }
+
+    public static long threadAllocatedBytes(){ //running total of the calling thread, -1 when the JVM does not track it
+        if (!ALLOCATION_SUPPORTED){return -1;}
+        return ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes();
+    }
+
+    public void recordPhase(int phase, long nanos){
+        phases[phase].record(nanos);
+    }
+
+    public ObjectName register(String name){ //e.g. "particlesim:type=Simulation", replaces anything registered under that name
+        try {
+            ObjectName objectName = new ObjectName(name);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)){server.unregisterMBean(objectName);}
+            server.registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String[] overlay(){ //short lines for drawing over the simulation
+        String[] lines = new String[PHASE_NAMES.length + 3];
+        for (int i = 0; i < PHASE_NAMES.length; ++i){
+            Histogram h = phases[i];
+            lines[i] = String.format("%-12s %6.2f ms  p99 %6.2f", PHASE_NAMES[i], h.getLast() / 1e6, h.getPercentile(0.99) / 1e6);
+        }
+        lines[PHASE_NAMES.length] = String.format("pairs %d tested, %d resolved", pairsTested.getLast(), pairsResolved.getLast());
+        lines[PHASE_NAMES.length + 1] = String.format("fullest cell %d, substeps %d x %.1f us",
+            cellOccupancy.getLast(), subSteps.getLast(), substepDt.getLast() / 1e3);
+        lines[PHASE_NAMES.length + 2] = String.format("allocating %.2f MB/s", getAllocationRate() / 1e6);
+        return lines;
+    }
+
+    private Map<String, Double> perPhase(ToDoubleFunction<Histogram> nanos){
+        Map<String, Double> millis = new LinkedHashMap<>();
+        for (int i = 0; i < PHASE_NAMES.length; ++i){millis.put(PHASE_NAMES[i], nanos.applyAsDouble(phases[i]) / 1e6);}
+        return millis;
+    }
+
+    @Override
+    public long getFrames(){
+        return phases[INTEGRATION].getCount();
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMeanMillis(){
+        return perPhase(Histogram::getMean);
+    }
+
+    @Override
+    public Map<String, Double> getPhaseP99Millis(){
+        return perPhase(h -> h.getPercentile(0.99));
+    }
+
+    @Override
+    public Map<String, Double> getPhaseLastMillis(){
+        return perPhase(Histogram::getLast);
+    }
+
+    @Override
+    public double getPairsTestedPerFrame(){
+        return pairsTested.getMean();
+    }
+
+    @Override
+    public double getPairsResolvedPerFrame(){
+        return pairsResolved.getMean();
+    }
+
+    @Override
+    public long getLastPairsTested(){
+        return pairsTested.getLast();
+    }
+
+    @Override
+    public long getLastPairsResolved(){
+        return pairsResolved.getLast();
+    }
+
+    @Override
+    public long getMaxCellOccupancy(){
+        return cellOccupancy.getMax();
+    }
+
+    @Override
+    public long getLastMaxCellOccupancy(){
+        return cellOccupancy.getLast();
+    }
+
+    @Override
+    public long getLastSubSteps(){
+        return subSteps.getLast();
+    }
+
+    @Override
+    public double getLastSubstepDtMicros(){
+        return substepDt.getLast() / 1e3;
+    }
+
+    @Override
+    public double getAllocationRate(){
+        double seconds = (System.nanoTime() - since) / 1e9;
+        return seconds <= 0 ? 0 : allocatedBytes.getSum() / seconds;
+    }
+
+    @Override
+    public void reset(){
+        for (Histogram h : phases){h.reset();}
+        pairsTested.reset();
+        pairsResolved.reset();
+        cellOccupancy.reset();
+        subSteps.reset();
+        substepDt.reset();
+        allocatedBytes.reset();
+        since = System.nanoTime();
+    }
+}
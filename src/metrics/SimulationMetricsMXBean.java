@@ -0,0 +1,38 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of SimulationMetrics, registered by SimulationMetrics.register().
+ * Phase times are per frame in milliseconds, keyed by SimulationMetrics.PHASE_NAMES.
+ * Everything is since the start of the run or the last reset().
+ */
+public interface SimulationMetricsMXBean {
+    long getFrames();
+
+    Map<String, Double> getPhaseMeanMillis();
+
+    Map<String, Double> getPhaseP99Millis();
+
+    Map<String, Double> getPhaseLastMillis();
+
+    double getPairsTestedPerFrame();
+
+    double getPairsResolvedPerFrame();
+
+    long getLastPairsTested();
+
+    long getLastPairsResolved();
+
+    long getMaxCellOccupancy(); //fullest cell seen
+
+    long getLastMaxCellOccupancy();
+
+    long getLastSubSteps();
+
+    double getLastSubstepDtMicros(); //simulated time per substep
+
+    double getAllocationRate(); //bytes per second allocated by the simulation thread, 0 when the JVM cannot tell
+
+    void reset();
+}
@@ -0,0 +1,44 @@
+package physics;
+
+/**
+ * Acceleration that is a constant plus a linear function of position:
+ * ax = ux + xx * x + xy * y, ay = uy + yx * x + yy * y.
+ * Covers uniform gravity and wind and a pull towards a point growing with distance (gravityMode 1).
+ * Sums of affine fields are affine, so ForcePipeline folds them all into one set of coefficients.
+ */
+public class AffineField implements ForceField {
+    public double ux, uy;
+    public double xx, xy, yx, yy;
+
+    public AffineField(double uxValue, double uyValue, double xxValue, double xyValue, double yxValue, double yyValue){
+        ux = uxValue;
+        uy = uyValue;
+        xx = xxValue;
+        xy = xyValue;
+        yx = yxValue;
+        yy = yyValue;
+    }
+
+    public static AffineField uniform(double ax, double ay){ //gravity, wind
+        return new AffineField(ax, ay, 0, 0, 0, 0);
+    }
+
+    public static AffineField pull(double cx, double cy, double k){ //k * distance towards (cx, cy)
+        return new AffineField(k * cx, k * cy, -k, 0, 0, -k);
+    }
+
+    public void add(AffineField other){
+        ux += other.ux;
+        uy += other.uy;
+        xx += other.xx;
+        xy += other.xy;
+        yx += other.yx;
+        yy += other.yy;
+    }
+
+    @Override
+    public void accelerationAt(double x, double y, double[] out){
+        out[0] += ux + xx * x + xy * y;
+        out[1] += uy + yx * x + yy * y;
+    }
+}
@@ -0,0 +1,213 @@
+package physics;
+
+/**
+ * Flat grid narrow phase on a copy of the positions in cell order and in reduced precision
+ * (SimulationConfig.precision), so the reads that dominate collision solving touch half the bytes and
+ * a cell's neighbours sit next to each other. gather() copies after binning, solveCell() takes the place
+ * of Simulation.solveCellCollisions and scatter() writes the positions back after the collisions,
+ * rounded to the precision as if the store held them that way.
+ * FLOAT keeps world coordinates in float32. FIXED keeps every coordinate as a 32-bit offset from the
+ * origin of the particle's cell in 1/2^20 px, finer than float32 anywhere further than 16 px from the
+ * world origin, and exact under addition. The push-out is written out once per precision.
+ * Pairs are visited in the scalar order with Simulation.solvePairCollision's sleep, support and contact rules.
+ */
+final class CompactNarrowPhase {
+    static final int FLOAT = 1, FIXED = 2;
+    private static final int FIXED_BITS = 20;
+    private static final double ONE = 1 << FIXED_BITS; //fixed point units per px
+
+    private final Simulation simulation;
+    private final int precision;
+    private float[] fx = new float[0], fy = new float[0];
+    private int[] ix = new int[0], iy = new int[0];
+    private int[] reach = new int[0]; //radius, in cell order
+
+    private ParticleStore s;
+    private FlatGrid g;
+    private long cellWidth, cellHeight; //fixed point
+    private int sleepAfter;
+    private double energyLoss;
+    private float restingReach; //px beyond touching at which two sleepers still hold each other up, 0 with sleeping off
+
+    CompactNarrowPhase(Simulation simulationValue, int precisionValue){
+        simulation = simulationValue;
+        precision = precisionValue;
+    }
+
+    void gather(ParticleStore store, FlatGrid grid, int sleepAfterValue, double energyLossValue){
+        s = store;
+        g = grid;
+        sleepAfter = sleepAfterValue;
+        energyLoss = energyLossValue;
+        restingReach = sleepAfter == Integer.MAX_VALUE ? 0 : (float) Simulation.SUPPORT_SLACK;
+        int n = g.itemCount;
+        if (reach.length < n){
+            reach = new int[n];
+            if (precision == FLOAT){
+                fx = new float[n];
+                fy = new float[n];
+            } else {
+                ix = new int[n];
+                iy = new int[n];
+            }
+        }
+        int[] items = g.cellItems;
+        for (int k = 0; k < n; ++k){reach[k] = s.radius[items[k]];}
+        if (precision == FLOAT){
+            for (int k = 0; k < n; ++k){
+                fx[k] = (float) s.x[items[k]];
+                fy[k] = (float) s.y[items[k]];
+            }
+            return;
+        }
+        cellWidth = Math.round(g.cellWidth * ONE);
+        cellHeight = Math.round(g.cellHeight * ONE);
+        for (int x = 0; x < g.width; ++x){
+            for (int y = 0; y < g.height; ++y){
+                int c = x * g.height + y;
+                for (int k = g.begin(c), end = g.end(c); k < end; ++k){
+                    ix[k] = (int) (Math.round(s.x[items[k]] * ONE) - x * cellWidth);
+                    iy[k] = (int) (Math.round(s.y[items[k]] * ONE) - y * cellHeight);
+                }
+            }
+        }
+    }
+
+    void scatter(){
+        int[] items = g.cellItems;
+        if (precision == FLOAT){
+            for (int k = 0, n = g.itemCount; k < n; ++k){
+                s.x[items[k]] = fx[k];
+                s.y[items[k]] = fy[k];
+            }
+            return;
+        }
+        for (int x = 0; x < g.width; ++x){
+            for (int y = 0; y < g.height; ++y){
+                int c = x * g.height + y;
+                for (int k = g.begin(c), end = g.end(c); k < end; ++k){
+                    s.x[items[k]] = (x * cellWidth + ix[k]) / ONE;
+                    s.y[items[k]] = (y * cellHeight + iy[k]) / ONE;
+                }
+            }
+        }
+    }
+
+    double solveCell(int x, int y){ //every particle of the cell against the 3x3 cells around it, as Simulation.solveCellCollisions
+        int h = g.height, cell = x * h + y;
+        int[] items = g.cellItems;
+        double overlap = 0;
+        for (int k = g.begin(cell), end = g.end(cell); k < end; ++k){
+            int p = items[k];
+            for (int nx = Math.max(x - 1, 0), nxEnd = Math.min(x + 1, g.width - 1); nx <= nxEnd; ++nx){
+                for (int ny = Math.max(y - 1, 0), nyEnd = Math.min(y + 1, h - 1); ny <= nyEnd; ++ny){
+                    int other = nx * h + ny;
+                    simulation.countCandidates(p, g.end(other) - g.begin(other));
+                    for (int k2 = g.begin(other), end2 = g.end(other); k2 < end2; ++k2){
+                        if (k2 == k){continue;}
+                        double o = precision == FLOAT ? pairFloat(k, k2) : pairFixed(k, k2, (x - nx) * cellWidth, (y - ny) * cellHeight);
+                        overlap += o;
+                    }
+                }
+            }
+        }
+        return overlap;
+    }
+
+    private double pairFloat(int k, int k2){
+        float offx = fx[k] - fx[k2], offy = fy[k] - fy[k2];
+        float d2 = offx * offx + offy * offy;
+        int minDistance = reach[k] + reach[k2];
+        float resting = minDistance + restingReach;
+        if (d2 >= resting * resting || d2 == 0){return 0;} //the common case, decided before touching the store
+        int p = g.cellItems[k], p2 = g.cellItems[k2];
+        boolean asleep = s.restSteps[p] >= sleepAfter, asleep2 = s.restSteps[p2] >= sleepAfter;
+        if (asleep && asleep2){return restingContact(p, p2);}
+        if (d2 >= minDistance * minDistance){return 0;}
+
+        float distance = (float) Math.sqrt(d2);
+        float overshoot = minDistance - distance;
+        float ux = offx / distance, uy = offy / distance; //from k2 towards k
+        if (asleep){ //only k2 moves, all the way out
+            fx[k2] -= overshoot * ux;
+            fy[k2] -= overshoot * uy;
+            if (simulation.strikes(p2, p, ux, uy)){s.restSteps[p] = 0;}
+        } else if (asleep2){
+            fx[k] += overshoot * ux;
+            fy[k] += overshoot * uy;
+            if (simulation.strikes(p, p2, -ux, -uy)){s.restSteps[p2] = 0;}
+        } else {
+            float massRatio = (float) (s.mass[p2] / s.mass[p]);
+            float shareA = massRatio * 0.5f, shareB = 1 / massRatio * 0.5f;
+            fx[k] += shareA * overshoot * ux;
+            fy[k] += shareA * overshoot * uy;
+            fx[k2] -= shareB * overshoot * ux;
+            fy[k2] -= shareB * overshoot * uy;
+        }
+        touched(p, fx[k], fy[k]);
+        touched(p2, fx[k2], fy[k2]);
+        simulation.support(p, p2, asleep, asleep2);
+        simulation.countHit(p);
+        simulation.recordContact(p, p2);
+        return overshoot;
+    }
+
+    private double pairFixed(int k, int k2, long cellOffX, long cellOffY){ //cellOff: origin of k's cell minus origin of k2's
+        long offx = (long) ix[k] - ix[k2] + cellOffX, offy = (long) iy[k] - iy[k2] + cellOffY;
+        long minDistance = (long) (reach[k] + reach[k2]) << FIXED_BITS;
+        long resting = minDistance + (long) (restingReach * ONE);
+        long d2 = offx * offx + offy * offy; //neighbours are a few cells apart, far from overflowing
+        if (d2 >= resting * resting || d2 == 0){return 0;}
+        int p = g.cellItems[k], p2 = g.cellItems[k2];
+        boolean asleep = s.restSteps[p] >= sleepAfter, asleep2 = s.restSteps[p2] >= sleepAfter;
+        if (asleep && asleep2){return restingContact(p, p2);}
+        if (d2 >= minDistance * minDistance){return 0;}
+
+        double distance = Math.sqrt((double) d2);
+        double overshoot = minDistance - distance;
+        double ux = offx / distance, uy = offy / distance;
+        if (asleep){
+            ix[k2] -= (int) Math.round(overshoot * ux);
+            iy[k2] -= (int) Math.round(overshoot * uy);
+        } else if (asleep2){
+            ix[k] += (int) Math.round(overshoot * ux);
+            iy[k] += (int) Math.round(overshoot * uy);
+        } else {
+            double massRatio = s.mass[p2] / s.mass[p];
+            double shareA = massRatio * 0.5, shareB = 1 / massRatio * 0.5;
+            ix[k] += (int) Math.round(shareA * overshoot * ux);
+            iy[k] += (int) Math.round(shareA * overshoot * uy);
+            ix[k2] -= (int) Math.round(shareB * overshoot * ux);
+            iy[k2] -= (int) Math.round(shareB * overshoot * uy);
+        }
+        overshoot /= ONE;
+        if (asleep && simulation.strikes(p2, p, ux, uy)){s.restSteps[p] = 0;}
+        if (asleep2 && simulation.strikes(p, p2, -ux, -uy)){s.restSteps[p2] = 0;}
+        touched(p, worldX(k, p), worldY(k, p));
+        touched(p2, worldX(k2, p2), worldY(k2, p2));
+        simulation.support(p, p2, asleep, asleep2);
+        simulation.countHit(p);
+        simulation.recordContact(p, p2);
+        return overshoot;
+    }
+
+    private double restingContact(int p, int p2){ //two sleepers within restingReach, nothing to push apart
+        if (!simulation.checkingSupport()){return 0;}
+        simulation.support(p, p2, true, true);
+        simulation.recordContact(p, p2);
+        return 0;
+    }
+
+    private double worldX(int k, int p){ //only needed on contact, the cell comes from the grid
+        return ((g.cellOf[p] / g.height) * cellWidth + ix[k]) / ONE;
+    }
+
+    private double worldY(int k, int p){
+        return ((g.cellOf[p] % g.height) * cellHeight + iy[k]) / ONE;
+    }
+
+    private void touched(int p, double x, double y){ //ParticleStore.slowdown against the position being solved
+        s.lastx[p] += energyLoss * (x - s.lastx[p]);
+        s.lasty[p] += energyLoss * (y - s.lasty[p]);
+    }
+}
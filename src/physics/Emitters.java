@@ -0,0 +1,128 @@
+package physics;
+
+/**
+ * Fixed capacity set of emitters and sinks, rectangles that add and remove particles while the simulation
+ * runs, stored as parallel arrays like Interactors. A positive rate spawns that many particles per frame at
+ * random points of the rectangle, a negative one removes up to that many per frame of the particles inside
+ * it, lowest slot first. Fractional rates carry over to the next frame, a sink with an infinite rate takes
+ * everything that enters it.
+ * Simulation.update() applies them once per frame before the substeps: sinks free slots, emitters fill
+ * them again and ParticleStore.compact() closes whatever is left, so the substeps only ever see live
+ * particles. Spawn points come from StreamRandom, seeded runs stay bit exact.
+ * Checkpoints save them, credit included, so a resumed run spawns exactly as the original. Input logs do not.
+ * Only touch this from the simulation thread (or before the simulation starts).
+ */
+public class Emitters {
+    private static final double GOLDEN = 0.6180339887498949; //hue step between consecutive ids
+
+    public double[] x, y, width, height; //top left corner and size of the rectangle
+    public double[] rate; //particles per frame, negative for a sink
+    public double[] vx, vy; //px per frame given to spawned particles
+    public int[] radius;
+    public int[] color; //packed ARGB of spawned particles, 0 = a hue per particle id
+    public boolean[] active;
+    public double[] credit; //particles owed from fractional rates
+
+    public int count = 0; //slots in use, inactive slots are skipped
+    public int limit = Integer.MAX_VALUE; //emitters pause while this many particles are alive, the cursor included
+    public final int maxRadius; //largest radius the grid finds every contact for
+    public long spawned = 0, removed = 0; //totals since construction
+
+    public Emitters(int capacity, int maxRadiusValue){
+        x = new double[capacity];
+        y = new double[capacity];
+        width = new double[capacity];
+        height = new double[capacity];
+        rate = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        radius = new int[capacity];
+        color = new int[capacity];
+        active = new boolean[capacity];
+        credit = new double[capacity];
+        maxRadius = maxRadiusValue;
+    }
+
+    public int add(double xpos, double ypos, double w, double h, double rateValue, int radiusValue, double vxValue, double vyValue, int argb){
+        if (radiusValue < 1 || radiusValue > maxRadius){
+            throw new IllegalArgumentException("emitter radius " + radiusValue + " is outside [1, " + maxRadius + "], raise maxParticleRadius");
+        }
+        if (!(rateValue >= 0) || Double.isInfinite(rateValue)){throw new IllegalArgumentException("emitter rate must be finite and not negative");}
+        return put(xpos, ypos, w, h, rateValue, radiusValue, vxValue, vyValue, argb);
+    }
+
+    public int addSink(double xpos, double ypos, double w, double h, double rateValue){ //Double.POSITIVE_INFINITY removes everything inside
+        if (!(rateValue >= 0)){throw new IllegalArgumentException("sink rate must not be negative");}
+        return put(xpos, ypos, w, h, -rateValue, 0, 0, 0, 0);
+    }
+
+    private int put(double xpos, double ypos, double w, double h, double rateValue, int radiusValue, double vxValue, double vyValue, int argb){
+        for (int i = 0; i < x.length; ++i){ //reuse the first free slot
+            if (!active[i]){
+                x[i] = xpos;
+                y[i] = ypos;
+                width[i] = w;
+                height[i] = h;
+                rate[i] = rateValue;
+                radius[i] = radiusValue;
+                vx[i] = vxValue;
+                vy[i] = vyValue;
+                color[i] = argb;
+                credit[i] = 0;
+                active[i] = true;
+                if (i >= count){count = i + 1;}
+                return i;
+            }
+        }
+        throw new IllegalStateException("no free emitter slot, capacity is " + x.length);
+    }
+
+    public void remove(int i){
+        active[i] = false;
+        while (count > 0 && !active[count - 1]){--count;}
+    }
+
+    public boolean contains(int i, double px, double py){
+        return px >= x[i] && px < x[i] + width[i] && py >= y[i] && py < y[i] + height[i];
+    }
+
+    int apply(Simulation simulation, int subSteps){ //one frame of spawning and removing, returns how many particles came or went
+        ParticleStore s = simulation.getParticles();
+        int changed = 0;
+        for (int i = 0; i < count; ++i){ //sinks first, so the emitters can reuse their slots
+            if (!active[i] || rate[i] >= 0){continue;}
+            credit[i] -= rate[i];
+            int budget = (int) Math.min(credit[i], s.count);
+            credit[i] -= budget; //a sink with nothing inside does not save up
+            for (int p = 1; p < s.count && budget > 0; ++p){ //never the cursor
+                if (s.id[p] >= 0 && contains(i, s.x[p], s.y[p])){
+                    s.remove(p);
+                    --budget;
+                    ++removed;
+                    ++changed;
+                }
+            }
+        }
+        for (int i = 0; i < count; ++i){
+            if (!active[i] || rate[i] <= 0){continue;}
+            credit[i] += rate[i];
+            int n = (int) credit[i];
+            credit[i] -= n;
+            n = Math.min(n, limit - s.liveCount()); //spawns held back by the limit are dropped, not saved up
+            if (n <= 0){continue;}
+            simulation.ensureCapacity(s.count + n);
+            for (int k = 0; k < n; ++k){
+                double px = x[i] + StreamRandom.uniform(s.seed, StreamRandom.EMIT, s.step, i, 2 * k) * width[i];
+                double py = y[i] + StreamRandom.uniform(s.seed, StreamRandom.EMIT, s.step, i, 2 * k + 1) * height[i];
+                int argb = color[i] != 0 ? color[i] : Simulation.HSVtoRGB(s.nextId * GOLDEN % 1, 1, 1);
+                int p = s.add(px, py, radius[i], 10 + radius[i], argb);
+                s.lastx[p] = px - vx[i] / subSteps;
+                s.lasty[p] = py - vy[i] / subSteps;
+            }
+            spawned += n;
+            changed += n;
+        }
+        s.compact();
+        return changed;
+    }
+}
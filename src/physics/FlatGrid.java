@@ -0,0 +1,94 @@
+package physics;
+import java.util.Arrays;
+
+/**
+ * Uniform grid built with a counting sort instead of per cell lists.
+ * After build() the particles of cell c are cellItems[cellStart[c] .. cellStart[c+1]).
+ * Cells are indexed column major (x * height + y) like GridPartition.
+ * Rebuilding is O(n) and allocates nothing once the arrays are large enough.
+ */
+public class FlatGrid {
+    public int width, height;
+    public double cellWidth, cellHeight;
+
+    public int[] cellStart; //prefix sums, length width * height + 1
+    public int[] cellItems; //particle indices sorted by cell
+    public int[] cellOf = new int[0]; //cell of each particle, -1 when outside the grid
+    public int itemCount = 0;
+
+    private int[] cellFill;
+
+    public FlatGrid(int w, int h, double worldWidth, double worldHeight){
+        width = w;
+        height = h;
+        cellWidth = worldWidth / w;
+        cellHeight = worldHeight / h;
+        cellStart = new int[w * h + 1];
+        cellFill = new int[w * h];
+        cellItems = new int[0];
+    }
+
+    public int cellX(double x){
+        return (int) Math.floor(x / cellWidth);
+    }
+
+    public int cellY(double y){
+        return (int) Math.floor(y / cellHeight);
+    }
+
+    public boolean inBounds(int cx, int cy){
+        return cx >= 0 && cx < width && cy >= 0 && cy < height;
+    }
+
+    public int cellIndex(double x, double y){ //-1 when outside the grid
+        int cx = cellX(x), cy = cellY(y);
+        if (!inBounds(cx, cy)){return -1;}
+        return cx * height + cy;
+    }
+
+    public int begin(int cell){
+        return cellStart[cell];
+    }
+
+    public int end(int cell){
+        return cellStart[cell + 1];
+    }
+
+    public void ensureCapacity(int n){
+        if (cellOf.length < n){
+            cellOf = new int[n];
+            cellItems = new int[n];
+        }
+    }
+
+    public void build(ParticleStore store){
+        int n = store.count;
+        ensureCapacity(n);
+        computeCells(store, 0, n);
+        sort(n);
+    }
+
+    public void computeCells(ParticleStore store, int from, int to){ //independent per particle, safe to run in parallel chunks
+        for (int i = from; i < to; ++i){
+            cellOf[i] = cellIndex(store.x[i], store.y[i]);
+        }
+    }
+
+    public void sort(int n){ //counting sort of cellOf[0, n) into cellItems
+        int cells = width * height;
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < n; ++i){
+            int c = cellOf[i];
+            if (c >= 0){cellStart[c + 1]++;}
+        }
+        for (int c = 0; c < cells; ++c){
+            cellStart[c + 1] += cellStart[c];
+            cellFill[c] = cellStart[c];
+        }
+        for (int i = 0; i < n; ++i){
+            int c = cellOf[i];
+            if (c >= 0){cellItems[cellFill[c]++] = i;}
+        }
+        itemCount = cellStart[cells];
+    }
+}
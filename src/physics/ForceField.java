@@ -0,0 +1,12 @@
+package physics;
+
+/**
+ * A force that only depends on where a particle is, as an acceleration like gravity.
+ * Fields are combined by ForcePipeline: AffineFields are summed and evaluated exactly, anything else
+ * is baked into one SampledField, so a particle pays the same whatever the number of fields.
+ * Forces that depend on velocity or on the particle itself (drag, fire buoyancy, the pointer
+ * Interactors) are applied by the simulation next to them.
+ */
+public interface ForceField {
+    void accelerationAt(double x, double y, double[] out); //adds the acceleration at (x, y) into out[0], out[1]
+}
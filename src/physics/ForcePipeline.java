@@ -0,0 +1,95 @@
+package physics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The position dependent forces of a scene, composed from ForceFields and applied in the simulation's
+ * single pass over the particles. compile() folds every AffineField into one set of coefficients and
+ * bakes all other fields into one SampledField covering the world, so apply() costs a few multiply-adds
+ * plus at most one texture lookup, however many fields there are.
+ * The simulation compiles at the next substep after add() or remove(); a field changed in place needs
+ * invalidate(). Only modify from the simulation thread (or before the simulation starts).
+ */
+public class ForcePipeline {
+    private final List<ForceField> fields = new ArrayList<>();
+    private final double worldWidth, worldHeight, texel;
+    private boolean compiled = false;
+
+    private AffineField affine = AffineField.uniform(0, 0);
+    private SampledField sampled; //null when every field is affine
+
+    public ForcePipeline(double worldWidthValue, double worldHeightValue, double texelValue){
+        worldWidth = worldWidthValue;
+        worldHeight = worldHeightValue;
+        texel = texelValue;
+    }
+
+    public ForcePipeline add(ForceField field){
+        fields.add(field);
+        compiled = false;
+        return this;
+    }
+
+    public void remove(ForceField field){
+        fields.remove(field);
+        compiled = false;
+    }
+
+    public List<ForceField> getFields(){ //read only view
+        return Collections.unmodifiableList(fields);
+    }
+
+    public void invalidate(){ //rebake at the next substep
+        compiled = false;
+    }
+
+    public boolean isSampled(){ //whether apply() does a texture lookup
+        compile();
+        return sampled != null;
+    }
+
+    public void compile(){
+        if (compiled){return;}
+        AffineField sum = AffineField.uniform(0, 0);
+        List<ForceField> rest = new ArrayList<>();
+        for (ForceField f : fields){
+            if (f instanceof AffineField){sum.add((AffineField) f);
+            } else {rest.add(f);}
+        }
+        SampledField baked = null;
+        if (rest.size() == 1 && rest.get(0) instanceof SampledField){ //already a texture, used as it is
+            baked = (SampledField) rest.get(0);
+        } else if (!rest.isEmpty()){
+            baked = SampledField.covering(worldWidth, worldHeight, texel);
+            for (ForceField f : rest){baked.bake(f);}
+        }
+        affine = sum;
+        sampled = baked;
+        compiled = true;
+    }
+
+    public void apply(ParticleStore s, int p){ //sets p's acceleration to the sum of every field, call compile() first
+        AffineField a = affine;
+        double x = s.x[p], y = s.y[p];
+        double ax = a.ux + a.xx * x + a.xy * y;
+        double ay = a.uy + a.yx * x + a.yy * y;
+        SampledField f = sampled;
+        if (f != null){ //SampledField.sample for both components at once
+            double fx = x * f.inverseTexel, fy = y * f.inverseTexel;
+            if (fx < 0){fx = 0;} else if (fx > f.lastX){fx = f.lastX;}
+            if (fy < 0){fy = 0;} else if (fy > f.lastY){fy = f.lastY;}
+            int i = (int) fx, j = (int) fy;
+            double tx = fx - i, ty = fy - j;
+            double[] v = f.values;
+            int k = (j * f.width + i) * 2, below = k + f.width * 2;
+            double top = v[k] + (v[k + 2] - v[k]) * tx, bottom = v[below] + (v[below + 2] - v[below]) * tx;
+            ax += top + (bottom - top) * ty;
+            top = v[k + 1] + (v[k + 3] - v[k + 1]) * tx;
+            bottom = v[below + 1] + (v[below + 3] - v[below + 1]) * tx;
+            ay += top + (bottom - top) * ty;
+        }
+        s.ax[p] = ax;
+        s.ay[p] = ay;
+    }
+}
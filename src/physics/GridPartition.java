@@ -1,26 +1,33 @@
 package physics;
-import java.util.ArrayList;
+import java.util.Arrays;
 
+/**
+ * Grid of per cell particle lists, cells indexed column major (x * height + y).
+ * Cleared and refilled every substep, or with SimulationConfig.incrementalGrid kept up to date by
+ * move(), which only touches the particles that changed cell. cellOf and slotOf remember where every
+ * particle inserted since the last clear() sits, so a move is two constant time list edits.
+ */
 public class GridPartition {
-    public class GridUnit{ 
-        //public int capacity = 5; //max objects to store
-        //public int count = 0; //num items stored
-        public ArrayList<Integer> objects = new ArrayList<Integer>();// = new int[capacity];
-
-        private void addItem(int item_id){
-            objects.add(item_id);
-            //if (count < capacity-1){count+=1;}
+    public class GridUnit{
+        public int[] objects = new int[4]; //particle indices, the first count are in use
+        public int count = 0;
+
+        private int addItem(int item_id){ //returns where it went
+            if (count == objects.length){objects = Arrays.copyOf(objects, count * 2);}
+            objects[count] = item_id;
+            return count++;
         }
 
         private void clear(){
-            objects.clear();
-            //objects = new int[capacity];
-            //count = 0;
+            count = 0;
         }
     }
 
     public GridUnit[] partition;
     public int width, height;
+    public int[] cellOf = new int[0]; //cell of each inserted particle, -1 outside the grid
+    private int[] slotOf = new int[0]; //index into that cell's objects
+    public int tracked = 0; //particles [0, tracked) have been inserted since the last clear()
 
     public GridPartition(int w, int h){
         partition = new GridUnit[w * h];
@@ -31,19 +38,45 @@ public class GridPartition {
         height = h;
     }
 
+    public boolean inBounds(int x, int y){
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
     public void addItem(int x, int y, int item_id){
-        try {
-            partition[x * height + y].addItem(item_id);
-        } catch (Exception e) {
-            //System.out.println("an error occured...");
+        if (!inBounds(x, y)){return;} //items outside the grid are not partitioned
+        partition[x * height + y].addItem(item_id);
+    }
+
+    public void ensureCapacity(int n){
+        if (cellOf.length < n){
+            cellOf = Arrays.copyOf(cellOf, n);
+            slotOf = Arrays.copyOf(slotOf, n);
+        }
+    }
+
+    public void insert(int item_id, int cell){ //bins item_id into cell (-1 = nowhere) and remembers where, call in index order after clear()
+        cellOf[item_id] = cell;
+        if (cell >= 0){slotOf[item_id] = partition[cell].addItem(item_id);}
+        tracked = Math.max(tracked, item_id + 1);
+    }
+
+    public void move(int item_id, int cell){ //from the cell it was inserted into to cell, the last item of the old cell fills the gap
+        int old = cellOf[item_id];
+        if (old >= 0){
+            GridUnit unit = partition[old];
+            int slot = slotOf[item_id], last = unit.objects[--unit.count];
+            unit.objects[slot] = last;
+            slotOf[last] = slot;
         }
-        
+        cellOf[item_id] = cell;
+        if (cell >= 0){slotOf[item_id] = partition[cell].addItem(item_id);}
     }
 
     public void clear(){
         for (GridUnit unit : partition){
             unit.clear();
         }
+        tracked = 0;
     }
 
 }
@@ -0,0 +1,141 @@
+package physics;
+
+/**
+ * Heat exchange between touching particles, run as its own stage after the collisions of every
+ * config.heatInterval-th substep instead of inside the narrow phase.
+ * On that substep the narrow phase records every pair it pushes apart, and every pair of sleepers resting
+ * against each other, into the contact list of the particle whose cell it is solving, so only one thread
+ * writes each list. A pair recorded from both sides draws the same number for both records and each moves
+ * half as much, so a lone pair still evens out in one go. Each contact then exchanges heat with the
+ * chance it would have had in any of the interval's substeps (see ParticleStore.probabilityOfTransfer). A
+ * first pass counts every particle's exchanges, a second one moves 0.5 / max(exchanges of either side) of
+ * the difference, so a lone pair evens out and nobody overshoots.
+ * Both passes run over chunks of slots, one per thread, and accumulate into that chunk's own buffer. The
+ * buffers hold fixed point integers, so adding them up gives the same bits in any order and at any thread
+ * count, and the heat one side loses is exactly what the other gains.
+ * Particles touching the floor on that substep gain floorTempGain once for every substep of the interval.
+ */
+final class HeatDiffusion {
+    static final int MAX_CONTACTS = 8; //recorded per particle and pass, equal circles touch at most 6
+    private static final double ONE = 0x1p32; //fixed point units per degree
+
+    private final StepScheduler scheduler;
+    private final int chunks;
+    private final StepScheduler.RangeTask selectTask = this::selectRange, countTask = this::countRange,
+        exchangeTask = this::exchangeRange, applyTask = this::applyRange;
+
+    private int[] contactCount = new int[0];
+    private int[] contactWith = new int[0]; //MAX_CONTACTS per particle, -1 once a contact is skipped
+    private int[] exchanges = new int[0];
+    private int[][] chunkExchanges;
+    private long[][] chunkHeat;
+
+    boolean recording; //this substep's contacts and floor hits are collected, set by the simulation
+
+    private ParticleStore s;
+    private double threshold, floorGain;
+    private int grain;
+
+    HeatDiffusion(StepScheduler schedulerValue){ //null runs every pass on the calling thread
+        scheduler = schedulerValue;
+        chunks = scheduler == null ? 1 : scheduler.getThreadCount();
+        chunkExchanges = new int[chunks][0];
+        chunkHeat = new long[chunks][0];
+    }
+
+    void ensureCapacity(int n){
+        if (contactCount.length >= n){return;}
+        contactCount = new int[n]; //contacts are only recorded during the collisions, never while growing
+        contactWith = new int[n * MAX_CONTACTS];
+        exchanges = new int[n];
+        for (int c = 0; c < chunks; ++c){
+            chunkExchanges[c] = new int[n];
+            chunkHeat[c] = new long[n];
+        }
+    }
+
+    void record(int p, int q){ //p and q touched, called by the thread that owns p's cell
+        if (!recording){return;}
+        int c = contactCount[p];
+        if (c < MAX_CONTACTS){
+            contactWith[p * MAX_CONTACTS + c] = q;
+            contactCount[p] = c + 1;
+        }
+    }
+
+    void touchFloor(ParticleStore store, int p){ //called by the thread integrating p, the flag moves with the particle
+        if (recording){store.onFloor[p] = true;}
+    }
+
+    void run(ParticleStore store, int interval){
+        s = store;
+        int n = s.count;
+        if (n == 0){return;}
+        threshold = Math.pow(s.probabilityOfTransfer, interval); //draws above this exchange, as likely as once in interval substeps
+        floorGain = s.floorTempGain * interval;
+        grain = (n + chunks - 1) / chunks;
+        forChunks(n, selectTask);
+        forChunks(n, countTask);
+        forChunks(n, exchangeTask);
+        forChunks(n, applyTask);
+    }
+
+    private void forChunks(int n, StepScheduler.RangeTask task){ //exactly one range per chunk, from / grain is its buffer
+        if (scheduler == null){task.run(0, n);
+        } else {scheduler.parallelFor(n, grain, task);}
+    }
+
+    private void selectRange(int from, int to){
+        int[] counted = chunkExchanges[from / grain];
+        for (int p = from; p < to; ++p){
+            for (int c = 0, base = p * MAX_CONTACTS; c < contactCount[p]; ++c){
+                int q = contactWith[base + c];
+                if (StreamRandom.uniform(s.seed, StreamRandom.COLLISION, s.step, Math.min(p, q), Math.max(p, q)) > threshold){ //a pair recorded from both sides draws once
+                    ++counted[p];
+                    ++counted[q];
+                } else {contactWith[base + c] = -1;}
+            }
+        }
+    }
+
+    private void countRange(int from, int to){
+        for (int p = from; p < to; ++p){
+            int m = 0;
+            for (int[] counted : chunkExchanges){
+                m += counted[p];
+                counted[p] = 0;
+            }
+            exchanges[p] = m;
+        }
+    }
+
+    private void exchangeRange(int from, int to){ //reads the temperatures, writes only the chunk's buffer
+        long[] heat = chunkHeat[from / grain];
+        double[] t = s.temperature;
+        for (int p = from; p < to; ++p){
+            for (int c = 0, base = p * MAX_CONTACTS; c < contactCount[p]; ++c){
+                int q = contactWith[base + c];
+                if (q < 0){continue;}
+                long d = Math.round((t[q] - t[p]) * (0.5 / Math.max(exchanges[p], exchanges[q])) * ONE);
+                heat[p] += d;
+                heat[q] -= d;
+            }
+            contactCount[p] = 0;
+        }
+    }
+
+    private void applyRange(int from, int to){
+        for (int p = from; p < to; ++p){
+            long sum = 0;
+            for (long[] heat : chunkHeat){
+                sum += heat[p];
+                heat[p] = 0;
+            }
+            if (sum != 0){s.temperature[p] += sum / ONE;}
+            if (s.onFloor[p]){
+                s.heatFromFloor(p, floorGain);
+                s.onFloor[p] = false;
+            }
+        }
+    }
+}
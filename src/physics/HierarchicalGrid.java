@@ -0,0 +1,110 @@
+package physics;
+import java.util.Arrays;
+
+/**
+ * Stack of uniform grids for particles of very different sizes (gridMode 2).
+ * Level k has cells baseCell * 2^k wide and holds the particles whose diameter fits in one of its
+ * cells, so within a level the 3x3 neighbourhood always finds every contact. A particle is checked
+ * against coarser levels from its own side only: its cell at level j is its level k cell shifted right
+ * by j - k, and the 3x3 neighbourhood there covers any contact with a level j particle.
+ * All levels share one counting sort like FlatGrid: cells of level k are numbered from offset[k],
+ * column major within the level, and cellItems[cellStart[c] .. cellStart[c+1]) are the particles of cell c.
+ */
+public class HierarchicalGrid {
+    public int levels;
+    public int[] width, height; //cells per level
+    public int[] offset; //global index of the first cell of each level
+    public double[] cellSize;
+    public int[] levelCount; //particles per level after sort()
+
+    public int[] cellStart; //prefix sums, length of all levels' cells + 1
+    public int[] cellItems; //particle indices sorted by cell
+    public int[] cellOf = new int[0]; //global cell of each particle, -1 when outside the grid
+    public int itemCount = 0;
+
+    private int[] cellFill;
+
+    public HierarchicalGrid(double baseCell, double maxRadius, double worldWidth, double worldHeight){
+        levels = 1;
+        while (baseCell * (1 << (levels - 1)) < 2 * maxRadius){++levels;}
+
+        width = new int[levels];
+        height = new int[levels];
+        offset = new int[levels];
+        cellSize = new double[levels];
+        levelCount = new int[levels];
+        int cells = 0;
+        for (int k = 0; k < levels; ++k){
+            cellSize[k] = baseCell * (1 << k);
+            width[k] = (int) Math.ceil(worldWidth / cellSize[k]);
+            height[k] = (int) Math.ceil(worldHeight / cellSize[k]);
+            offset[k] = cells;
+            cells += width[k] * height[k];
+        }
+        cellStart = new int[cells + 1];
+        cellFill = new int[cells];
+        cellItems = new int[0];
+    }
+
+    public int levelOf(int radius){ //finest level whose cells fit the particle, the top level for anything larger
+        int k = 0;
+        while (k < levels - 1 && cellSize[k] < 2 * radius){++k;}
+        return k;
+    }
+
+    public int cellIndex(int level, double x, double y){ //-1 when outside the grid
+        int cx = (int) Math.floor(x / cellSize[level]), cy = (int) Math.floor(y / cellSize[level]);
+        if (cx < 0 || cx >= width[level] || cy < 0 || cy >= height[level]){return -1;}
+        return offset[level] + cx * height[level] + cy;
+    }
+
+    public int begin(int cell){
+        return cellStart[cell];
+    }
+
+    public int end(int cell){
+        return cellStart[cell + 1];
+    }
+
+    public void ensureCapacity(int n){
+        if (cellOf.length < n){
+            cellOf = new int[n];
+            cellItems = new int[n];
+        }
+    }
+
+    public void build(ParticleStore store){
+        int n = store.count;
+        ensureCapacity(n);
+        computeCells(store, 0, n);
+        sort(n);
+    }
+
+    public void computeCells(ParticleStore store, int from, int to){ //independent per particle, safe to run in parallel chunks
+        for (int i = from; i < to; ++i){
+            cellOf[i] = cellIndex(levelOf(store.radius[i]), store.x[i], store.y[i]);
+        }
+    }
+
+    public void sort(int n){ //counting sort of cellOf[0, n) into cellItems
+        int cells = cellFill.length;
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < n; ++i){
+            int c = cellOf[i];
+            if (c >= 0){cellStart[c + 1]++;}
+        }
+        for (int c = 0; c < cells; ++c){
+            cellStart[c + 1] += cellStart[c];
+            cellFill[c] = cellStart[c];
+        }
+        for (int i = 0; i < n; ++i){
+            int c = cellOf[i];
+            if (c >= 0){cellItems[cellFill[c]++] = i;}
+        }
+        for (int k = 0; k < levels; ++k){
+            int last = k + 1 < levels ? offset[k + 1] : cells;
+            levelCount[k] = cellStart[last] - cellStart[offset[k]];
+        }
+        itemCount = cellStart[cells];
+    }
+}
@@ -0,0 +1,74 @@
+package physics;
+
+/**
+ * Fixed capacity set of attractors and repellers, stored as parallel arrays like ParticleStore.
+ * A positive strength pulls particles in, a negative one pushes them away. The pull fades
+ * linearly to zero at the radius. Interactors can follow the pointer, in which case the
+ * simulation moves them every substep.
+ * Only touch this from the simulation thread (or before the simulation starts).
+ */
+public class Interactors {
+    public double[] x, y;
+    public double[] strength;
+    public double[] radius;
+    public boolean[] followsPointer;
+    public boolean[] active;
+
+    public int count = 0; //slots in use, inactive slots are skipped
+
+    public Interactors(int capacity){
+        x = new double[capacity];
+        y = new double[capacity];
+        strength = new double[capacity];
+        radius = new double[capacity];
+        followsPointer = new boolean[capacity];
+        active = new boolean[capacity];
+    }
+
+    public int add(double xpos, double ypos, double strengthValue, double radiusValue, boolean follow){
+        for (int i = 0; i < x.length; ++i){ //reuse the first free slot
+            if (!active[i]){
+                x[i] = xpos;
+                y[i] = ypos;
+                strength[i] = strengthValue;
+                radius[i] = radiusValue;
+                followsPointer[i] = follow;
+                active[i] = true;
+                if (i >= count){count = i + 1;}
+                return i;
+            }
+        }
+        throw new IllegalStateException("no free interactor slot, capacity is " + x.length);
+    }
+
+    public void remove(int i){
+        active[i] = false;
+        while (count > 0 && !active[count - 1]){--count;}
+    }
+
+    public void setPosition(int i, double xpos, double ypos){
+        x[i] = xpos;
+        y[i] = ypos;
+    }
+
+    public void follow(double xpos, double ypos){ //move every pointer following interactor
+        for (int i = 0; i < count; ++i){
+            if (followsPointer[i]){setPosition(i, xpos, ypos);}
+        }
+    }
+
+    public void accelerate(ParticleStore s, int p){ //add the pull of every interactor to particle p
+        for (int i = 0; i < count; ++i){
+            if (!active[i]){continue;}
+            double dx = x[i] - s.x[p];
+            double dy = y[i] - s.y[p];
+            double d2 = dx * dx + dy * dy;
+            double r = radius[i];
+            if (d2 >= r * r || d2 == 0){continue;}
+            double d = Math.sqrt(d2);
+            double pull = strength[i] * (1 - d / r) / d;
+            s.ax[p] += dx * pull;
+            s.ay[p] += dy * pull;
+        }
+    }
+}
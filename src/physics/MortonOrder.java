@@ -0,0 +1,55 @@
+package physics;
+import java.util.Arrays;
+
+/**
+ * Sorts particle storage along a Morton (Z order) curve of the grid cells, so particles that are
+ * close in space are also close in memory and the collision loops stop jumping around the arrays.
+ * Slot 0 (the cursor) stays in place. ParticleStore.id follows each particle, so anything that
+ * needs to track a particle across a reorder uses the id instead of the slot.
+ */
+public class MortonOrder {
+    public double cellSize;
+
+    private long[] keys = new long[0]; //morton code << 32 | slot, sorted
+    private int[] order = new int[0];
+
+    public MortonOrder(double cellSizeValue){
+        cellSize = cellSizeValue;
+    }
+
+    public static int code(int x, int y){ //interleaves the low 16 bits of x and y, x in the even bits
+        return spread(x) | (spread(y) << 1);
+    }
+
+    private static int spread(int v){ //abcd -> 0a0b0c0d
+        v &= 0xFFFF;
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        return v;
+    }
+
+    private int cell(double v){ //cell coordinate offset so the world origin sits mid range, clamped to 16 bits
+        double c = Math.floor(v / cellSize) + 0x8000;
+        if (c < 0){return 0;}
+        if (c > 0xFFFF){return 0xFFFF;}
+        return (int) c;
+    }
+
+    public void reorder(ParticleStore s){
+        int n = s.count;
+        if (n < 3){return;}
+        if (keys.length < n){
+            keys = new long[n];
+            order = new int[n];
+        }
+        for (int i = 1; i < n; ++i){
+            keys[i] = ((long) code(cell(s.x[i]), cell(s.y[i])) << 32) | i; //the slot breaks ties, keeping equal cells in their old order
+        }
+        Arrays.sort(keys, 1, n);
+        order[0] = 0;
+        for (int i = 1; i < n; ++i){order[i] = (int) keys[i];}
+        s.permute(order, n);
+    }
+}
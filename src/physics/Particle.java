@@ -1,147 +1,115 @@
 package physics;
 import java.awt.Color;
 
+/**
+ * Object view of a single slot in a ParticleStore.
+ * All state lives in the store, this only holds the index so it is cheap to create and never copied.
+ * The view follows the slot, not the particle: after the store is reordered it shows whichever particle moved in.
+ */
 public class Particle {
-    public double x, y;
-    public double lastx, lasty;
-    public double ax = 0, ay = 0;
-    public double vx = 0, vy = 0;
-    public double mass;
-
-    public int radius;
-    public Color color;
-    public double temperature;
-    
-    double probabilityOfTransfer = 0.94;
-    double floorTempGain = 100;
-    double maxTemp = 200;
-
-    public Particle(double xpos, double ypos, int radiusValue, double massValue, Color colorValue){
-        x = xpos;
-        y = ypos;
-        lastx = x;
-        lasty = y;
-
-        radius = radiusValue;
-        mass = massValue;
-        color = colorValue;
-        temperature = 0;
+    private final ParticleStore store;
+    private final int index;
+
+    public Particle(ParticleStore store, int index){
+        this.store = store;
+        this.index = index;
+    }
+
+    public Particle(double xpos, double ypos, int radiusValue, double massValue, Color colorValue){ //standalone particle backed by its own store
+        store = new ParticleStore(1);
+        index = store.add(xpos, ypos, radiusValue, massValue, colorValue.getRGB());
+    }
+
+    public ParticleStore getStore(){
+        return store;
+    }
+
+    public int getIndex(){
+        return index;
     }
 
     public void update(double dt){ //velocity verlet
-        vx = x - lastx;
-        vy = y - lasty;
-        lastx = x;
-        lasty = y;
-        x = x + vx + ax * dt * dt;
-        y = y + vy + ay * dt * dt;
+        store.update(index, dt);
+    }
+
+    public double getX(){
+        return store.x[index];
+    }
+
+    public double getY(){
+        return store.y[index];
+    }
+
+    public void setPosition(double xpos, double ypos){
+        store.x[index] = xpos;
+        store.y[index] = ypos;
+    }
+
+    public double getLastX(){
+        return store.lastx[index];
+    }
+
+    public double getLastY(){
+        return store.lasty[index];
     }
 
     public double getVelocityX(){
-        return vx;
+        return store.vx[index];
     }
 
     public double getVelocityY(){
-        return vy;
+        return store.vy[index];
+    }
+
+    public int getRadius(){
+        return store.radius[index];
+    }
+
+    public double getMass(){
+        return store.mass[index];
+    }
+
+    public Color getColor(){
+        return new Color(store.color[index], true);
+    }
+
+    public double getTemperature(){
+        return store.temperature[index];
+    }
+
+    public void setTemperature(double temperature){
+        store.temperature[index] = temperature;
     }
 
     public void slowdown(double factor){
-        lastx += factor * (x - lastx);
-        lasty += factor * (y - lasty);
+        store.slowdown(index, factor);
     }
 
     public void invertVelocity(){
-        lastx = x + vx;
-        lasty = y + vy;
+        store.invertVelocity(index);
     }
 
     public void stop(){ //or slowdown(1)
-        lastx = x;
-        lasty = y;
+        store.stop(index);
     }
 
     public void applyForce(double fx, double fy){ //f = ma therefore a = f/m
-        this.ax += fx/mass; 
-        this.ay += fy/mass;
+        store.applyForce(index, fx, fy);
     }
-   
+
     public void accelerate(double fx, double fy){ //for things like gravity
-        this.ax = fx; 
-        this.ay = fy;
+        store.accelerate(index, fx, fy);
     }
 
     public boolean enforceBoundaryConditionCircular(double bx, double by, double r){
-        double offsetx = x - bx;
-        double offsety = y - by;
-        double distance = Math.hypot(offsetx, offsety);
-        if (distance > (r - radius)){
-            x = bx + offsetx/distance * (r - radius);
-            y = by + offsety/distance * (r - radius);
-            return true;
-        }
-        return false;
+        return store.enforceBoundaryConditionCircular(index, bx, by, r);
     }
 
     public boolean enforceBoundaryCondition(double width, double height, double padding){
-        boolean collision = false;
-        if (x < padding){
-            x = padding;
-            lastx = x + vx;
-            collision = true;
-
-        } else if (x > width - padding){
-            x = width - padding;
-            lastx = x + vx;
-            collision = true; }
-
-        if (y < padding){
-            // y = padding;
-            // lasty = y + vy;
-            // collision = true;
-        } else if (y > height - padding){
-            y = height - padding;
-            lasty = y + vy;
-            collision = true;
-            temperature += floorTempGain;
-            if (temperature > maxTemp){temperature = maxTemp;}
-            }
-
-        return collision;
+        return store.enforceBoundaryCondition(index, width, height, padding);
     }
 
     public boolean solveCollision(Particle p) {
-        double offx = x - p.x; 
-        double offy = y - p.y;
-        double distance = Math.hypot(offx, offy);
-        if (distance < (radius + p.radius) && distance != 0) { // intersection, move p out of this
-            double overshoot = ((radius + p.radius) - distance);
-            double massRatio = p.mass/mass; //account for momentum
-            //massRatio = 1;
-
-            x += massRatio * 0.5 * overshoot * offx/distance;
-            y += massRatio * 0.5 * overshoot * offy/distance;
-
-            p.x -= 1/massRatio * 0.5 * overshoot * offx/distance;
-            p.y -= 1/massRatio * 0.5 * overshoot * offy/distance;
-
-            if (Math.random() > probabilityOfTransfer){
-            p.temperature = 0.5 * temperature + 0.5 * p.temperature;
-            temperature = 0.5 * p.temperature + 0.5 * temperature;
-            }
-
-            return true;
-        }
-        return false;
-    }
-
-    // public void update(double dt){ //stormer verlet
-    //     double tx = x;
-    //     double ty = y;
-    //     //vx = x - lastx;
-    //     //vy = y - lasty;
-    //     x = x * 2 - lastx + this.ax * dt * dt;
-    //     y = y * 2 - lasty + this.ay * dt * dt;
-    //     lastx = tx;
-    //     lasty = ty;
-    // }
-}
\ No newline at end of file
+        return ParticleStore.solveCollision(store, index, p.store, p.index);
+    }
+}
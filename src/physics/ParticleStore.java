@@ -0,0 +1,341 @@
+package physics;
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for every particle in the simulation.
+ * Each attribute lives in its own primitive array and a particle is just an index into them,
+ * so the hot loops stream through contiguous memory instead of chasing object references.
+ * Colours are packed ARGB ints. Use Particle for an object view of a single slot.
+ * Slots can be reordered with permute(), id[] stays with the particle and is what to keep to follow one.
+ * remove() only marks a slot dead (id -1) and puts it on a free list, add() fills free slots first and
+ * compact() moves particles from the end into the ones left over, so after it [0, count) is dense again.
+ */
+public class ParticleStore {
+    public double[] x, y;
+    public double[] lastx, lasty;
+    public double[] ax, ay;
+    public double[] vx, vy;
+    public double[] mass;
+    public double[] temperature;
+    public int[] radius;
+    public int[] color;
+    public int[] restSteps; //consecutive substeps spent near (restx, resty), see Simulation
+    public double[] restx, resty;
+    public boolean[] contact; //held up by the floor or a sleeper in the last substep, only supported particles may fall asleep
+    public boolean[] onFloor; //touched the floor on a heat substep, HeatDiffusion heats it and clears the flag
+    public int[] id; //stable identity, the slot it was added at
+
+    private double[] spareDoubles; //reused by permute()
+    private int[] spareInts;
+    private boolean[] spareBooleans;
+    private int[] free = new int[0]; //dead slots below count, waiting for add() or compact()
+    private int freeCount = 0;
+
+    public int count = 0; //number of slots in use, always [0, count)
+    public int nextId = 0; //id of the next particle added, ids are never reused
+
+    public double probabilityOfTransfer = 0.94;
+    public double floorTempGain = 100;
+    public double maxTemp = 200;
+
+    public long seed = 1; //random draws are keyed by seed, step and particle indices, see StreamRandom
+    public long step = 0; //substep counter, advanced by the simulation
+
+    public ParticleStore(int capacity){
+        x = new double[capacity];
+        y = new double[capacity];
+        lastx = new double[capacity];
+        lasty = new double[capacity];
+        ax = new double[capacity];
+        ay = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        mass = new double[capacity];
+        temperature = new double[capacity];
+        radius = new int[capacity];
+        color = new int[capacity];
+        restSteps = new int[capacity];
+        restx = new double[capacity];
+        resty = new double[capacity];
+        contact = new boolean[capacity];
+        onFloor = new boolean[capacity];
+        id = new int[capacity];
+    }
+
+    public int capacity(){
+        return x.length;
+    }
+
+    public void ensureCapacity(int n){ //grows every array to hold at least n particles, by half again at a time
+        if (n <= capacity()){return;}
+        int c = Math.max(n, capacity() + capacity() / 2);
+        x = Arrays.copyOf(x, c);
+        y = Arrays.copyOf(y, c);
+        lastx = Arrays.copyOf(lastx, c);
+        lasty = Arrays.copyOf(lasty, c);
+        ax = Arrays.copyOf(ax, c);
+        ay = Arrays.copyOf(ay, c);
+        vx = Arrays.copyOf(vx, c);
+        vy = Arrays.copyOf(vy, c);
+        mass = Arrays.copyOf(mass, c);
+        temperature = Arrays.copyOf(temperature, c);
+        radius = Arrays.copyOf(radius, c);
+        color = Arrays.copyOf(color, c);
+        restSteps = Arrays.copyOf(restSteps, c);
+        restx = Arrays.copyOf(restx, c);
+        resty = Arrays.copyOf(resty, c);
+        contact = Arrays.copyOf(contact, c);
+        onFloor = Arrays.copyOf(onFloor, c);
+        id = Arrays.copyOf(id, c);
+    }
+
+    public void copy(int to, ParticleStore from, int i){ //slot to becomes slot i of from, id included, from may be this store
+        x[to] = from.x[i];
+        y[to] = from.y[i];
+        lastx[to] = from.lastx[i];
+        lasty[to] = from.lasty[i];
+        ax[to] = from.ax[i];
+        ay[to] = from.ay[i];
+        vx[to] = from.vx[i];
+        vy[to] = from.vy[i];
+        mass[to] = from.mass[i];
+        temperature[to] = from.temperature[i];
+        radius[to] = from.radius[i];
+        color[to] = from.color[i];
+        restSteps[to] = from.restSteps[i];
+        restx[to] = from.restx[i];
+        resty[to] = from.resty[i];
+        contact[to] = from.contact[i];
+        onFloor[to] = from.onFloor[i];
+        id[to] = from.id[i];
+    }
+
+    public int add(double xpos, double ypos, int radiusValue, double massValue, int argb){ //into a free slot if there is one, else at the end
+        int i = freeCount > 0 ? free[--freeCount] : count++;
+        set(i, xpos, ypos, radiusValue, massValue, argb);
+        id[i] = nextId++;
+        return i;
+    }
+
+    public void remove(int i){ //dead until add() reuses the slot or compact() fills it
+        if (id[i] < 0){return;}
+        id[i] = -1;
+        if (freeCount == free.length){free = Arrays.copyOf(free, Math.max(16, freeCount * 2));}
+        free[freeCount++] = i;
+    }
+
+    public boolean isAlive(int i){
+        return i < count && id[i] >= 0;
+    }
+
+    public int liveCount(){
+        return count - freeCount;
+    }
+
+    public void compact(){ //highest hole first, so the last slot is always alive or the hole itself
+        Arrays.sort(free, 0, freeCount);
+        while (freeCount > 0){
+            int hole = free[--freeCount], last = --count;
+            if (hole != last){copy(hole, this, last);}
+        }
+    }
+
+    public void permute(int[] order, int n){ //slot i takes the particle from slot order[i], for the first n slots
+        x = permute(x, order, n);
+        y = permute(y, order, n);
+        lastx = permute(lastx, order, n);
+        lasty = permute(lasty, order, n);
+        ax = permute(ax, order, n);
+        ay = permute(ay, order, n);
+        vx = permute(vx, order, n);
+        vy = permute(vy, order, n);
+        mass = permute(mass, order, n);
+        temperature = permute(temperature, order, n);
+        restx = permute(restx, order, n);
+        resty = permute(resty, order, n);
+        radius = permute(radius, order, n);
+        color = permute(color, order, n);
+        restSteps = permute(restSteps, order, n);
+        id = permute(id, order, n);
+        contact = permute(contact, order, n);
+        onFloor = permute(onFloor, order, n);
+    }
+
+    private double[] permute(double[] a, int[] order, int n){ //writes into the spare array and keeps a as the next spare
+        double[] b = spareDoubles != null && spareDoubles.length == a.length ? spareDoubles : new double[a.length];
+        for (int i = 0; i < n; ++i){b[i] = a[order[i]];}
+        spareDoubles = a;
+        return b;
+    }
+
+    private int[] permute(int[] a, int[] order, int n){
+        int[] b = spareInts != null && spareInts.length == a.length ? spareInts : new int[a.length];
+        for (int i = 0; i < n; ++i){b[i] = a[order[i]];}
+        spareInts = a;
+        return b;
+    }
+
+    private boolean[] permute(boolean[] a, int[] order, int n){
+        boolean[] b = spareBooleans != null && spareBooleans.length == a.length ? spareBooleans : new boolean[a.length];
+        for (int i = 0; i < n; ++i){b[i] = a[order[i]];}
+        spareBooleans = a;
+        return b;
+    }
+
+    public void set(int i, double xpos, double ypos, int radiusValue, double massValue, int argb){ //reset slot i in place
+        x[i] = xpos;
+        y[i] = ypos;
+        lastx[i] = xpos;
+        lasty[i] = ypos;
+        ax[i] = 0;
+        ay[i] = 0;
+        vx[i] = 0;
+        vy[i] = 0;
+        radius[i] = radiusValue;
+        mass[i] = massValue;
+        color[i] = argb;
+        temperature[i] = 0;
+        restSteps[i] = 0;
+        contact[i] = false;
+        onFloor[i] = false;
+    }
+
+    public void update(int i, double dt){ //velocity verlet
+        double dt2 = dt * dt;
+        vx[i] = x[i] - lastx[i];
+        vy[i] = y[i] - lasty[i];
+        lastx[i] = x[i];
+        lasty[i] = y[i];
+        x[i] = x[i] + vx[i] + ax[i] * dt2;
+        y[i] = y[i] + vy[i] + ay[i] * dt2;
+    }
+
+    public void integrate(int from, int to, double dt){ //same as update() over a range, branch free so the JIT can vectorise it
+        double dt2 = dt * dt;
+        for (int i = from; i < to; ++i){
+            double px = x[i], py = y[i];
+            double dx = px - lastx[i], dy = py - lasty[i];
+            vx[i] = dx;
+            vy[i] = dy;
+            lastx[i] = px;
+            lasty[i] = py;
+            x[i] = px + dx + ax[i] * dt2;
+            y[i] = py + dy + ay[i] * dt2;
+        }
+    }
+
+    public void scaleVelocity(int from, int to, double factor){ //keeps the real velocity when the substep length changes by 1/factor
+        for (int i = from; i < to; ++i){
+            lastx[i] = x[i] - (x[i] - lastx[i]) * factor;
+            lasty[i] = y[i] - (y[i] - lasty[i]) * factor;
+        }
+    }
+
+    public void slowdown(int i, double factor){
+        lastx[i] += factor * (x[i] - lastx[i]);
+        lasty[i] += factor * (y[i] - lasty[i]);
+    }
+
+    public void invertVelocity(int i){
+        lastx[i] = x[i] + vx[i];
+        lasty[i] = y[i] + vy[i];
+    }
+
+    public void stop(int i){ //or slowdown(1)
+        lastx[i] = x[i];
+        lasty[i] = y[i];
+    }
+
+    public void applyForce(int i, double fx, double fy){ //f = ma therefore a = f/m
+        ax[i] += fx/mass[i];
+        ay[i] += fy/mass[i];
+    }
+
+    public void accelerate(int i, double fx, double fy){ //for things like gravity
+        ax[i] = fx;
+        ay[i] = fy;
+    }
+
+    public boolean enforceBoundaryConditionCircular(int i, double bx, double by, double r){
+        double offsetx = x[i] - bx;
+        double offsety = y[i] - by;
+        double distance = Math.sqrt(offsetx * offsetx + offsety * offsety); //sqrt is an intrinsic, hypot is not
+        double limit = r - radius[i];
+        if (distance > limit){
+            x[i] = bx + offsetx/distance * limit;
+            y[i] = by + offsety/distance * limit;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean enforceBoundaryCondition(int i, double width, double height, double padding){
+        boolean collision = false;
+        if (x[i] < padding){
+            x[i] = padding;
+            lastx[i] = x[i] + vx[i];
+            collision = true;
+
+        } else if (x[i] > width - padding){
+            x[i] = width - padding;
+            lastx[i] = x[i] + vx[i];
+            collision = true; }
+
+        if (y[i] < padding){
+            // no ceiling
+        } else if (y[i] > height - padding){ //heats the particle too, see heatFromFloor()
+            y[i] = height - padding;
+            lasty[i] = y[i] + vy[i];
+            collision = true;
+            }
+
+        return collision;
+    }
+
+    public void heatFromFloor(int i, double gain){
+        temperature[i] += gain;
+        if (temperature[i] > maxTemp){temperature[i] = maxTemp;}
+    }
+
+    public boolean solveCollision(int i, int j){
+        return solveCollision(this, i, this, j);
+    }
+
+    public static boolean solveCollision(ParticleStore a, int i, ParticleStore b, int j){ //push apart and maybe share heat, for particles outside a Simulation
+        if (resolveOverlap(a, i, b, j) == 0){return false;}
+        shareHeat(a, i, b, j);
+        return true;
+    }
+
+    public static double resolveOverlap(ParticleStore a, int i, ParticleStore b, int j){ //push particle j out of particle i, returns the overlap removed, heat is left to the caller
+        return resolveOverlap(a, i, b, j, false);
+    }
+
+    public static double resolveOverlap(ParticleStore a, int i, ParticleStore b, int j, boolean iFixed){ //iFixed: only j moves, all the way out
+        double offx = a.x[i] - b.x[j];
+        double offy = a.y[i] - b.y[j];
+        double distance = Math.sqrt(offx * offx + offy * offy);
+        double minDistance = a.radius[i] + b.radius[j];
+        if (distance < minDistance && distance != 0) { // intersection, move p out of this
+            double overshoot = minDistance - distance;
+            double massRatio = b.mass[j]/a.mass[i]; //account for momentum
+            double shareA = iFixed ? 0 : massRatio * 0.5;
+            double shareB = iFixed ? 1 : 1/massRatio * 0.5;
+
+            a.x[i] += shareA * overshoot * offx/distance;
+            a.y[i] += shareA * overshoot * offy/distance;
+
+            b.x[j] -= shareB * overshoot * offx/distance;
+            b.y[j] -= shareB * overshoot * offy/distance;
+            return overshoot;
+        }
+        return 0;
+    }
+
+    static void shareHeat(ParticleStore a, int i, ParticleStore b, int j){ //after i and j collided, now and then they even out their temperatures
+        if (StreamRandom.uniform(a.seed, StreamRandom.COLLISION, a.step, i, j) > a.probabilityOfTransfer){
+            b.temperature[j] = 0.5 * a.temperature[i] + 0.5 * b.temperature[j];
+            a.temperature[i] = 0.5 * b.temperature[j] + 0.5 * a.temperature[i];
+        }
+    }
+}
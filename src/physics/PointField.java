@@ -0,0 +1,46 @@
+package physics;
+
+/**
+ * Attractor or vortex around a fixed point, fading linearly to zero at the radius like Interactors.
+ * An attractor pulls towards the point (a negative strength pushes away), a vortex turns
+ * particles around it (clockwise on screen for a positive strength).
+ * Baked into ForcePipeline's SampledField, so use Interactors for points that move every frame.
+ */
+public class PointField implements ForceField {
+    public double x, y;
+    public double strength;
+    public double radius;
+    public boolean vortex;
+
+    public PointField(double xpos, double ypos, double strengthValue, double radiusValue, boolean isVortex){
+        x = xpos;
+        y = ypos;
+        strength = strengthValue;
+        radius = radiusValue;
+        vortex = isVortex;
+    }
+
+    public static PointField attractor(double x, double y, double strength, double radius){
+        return new PointField(x, y, strength, radius, false);
+    }
+
+    public static PointField vortex(double x, double y, double strength, double radius){
+        return new PointField(x, y, strength, radius, true);
+    }
+
+    @Override
+    public void accelerationAt(double px, double py, double[] out){
+        double dx = x - px, dy = y - py;
+        double d2 = dx * dx + dy * dy;
+        if (d2 >= radius * radius || d2 == 0){return;}
+        double d = Math.sqrt(d2);
+        double pull = strength * (1 - d / radius) / d;
+        if (vortex){
+            out[0] += dy * pull;
+            out[1] -= dx * pull;
+        } else {
+            out[0] += dx * pull;
+            out[1] += dy * pull;
+        }
+    }
+}
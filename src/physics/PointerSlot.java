@@ -0,0 +1,41 @@
+package physics;
+
+/**
+ * Lock free single writer slot for a pointer position.
+ * The input thread (usually the EDT) publishes x and y packed as two floats into one volatile long,
+ * so the simulation thread always reads a matching pair without locking or allocating.
+ * A NaN position means there is no pointer (it left the window or none was ever published).
+ */
+public class PointerSlot {
+    private static final long EMPTY = pack(Float.NaN, Float.NaN);
+
+    private volatile long position = EMPTY;
+
+    public void publish(double x, double y){
+        position = pack((float) x, (float) y);
+    }
+
+    public void clear(){
+        position = EMPTY;
+    }
+
+    public long read(){ //read once, then decode with x() and y()
+        return position;
+    }
+
+    public static long pack(float x, float y){
+        return ((long) Float.floatToRawIntBits(x) << 32) | (Float.floatToRawIntBits(y) & 0xFFFFFFFFL);
+    }
+
+    public static float x(long packed){
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    public static float y(long packed){
+        return Float.intBitsToFloat((int) packed);
+    }
+
+    public static boolean isPresent(long packed){
+        return !Float.isNaN(x(packed));
+    }
+}
@@ -0,0 +1,106 @@
+package physics;
+
+/**
+ * Force field stored as a grid of precomputed accelerations and read with bilinear interpolation,
+ * so a field of any complexity (wind maps, turbulence, many baked attractors) costs one lookup.
+ * Sample (i, j) sits at (i * texel, j * texel), positions past the edge read the edge.
+ * Accelerations are interleaved (ax, ay) per sample in row major order, so a lookup touches two
+ * short runs of memory.
+ */
+public class SampledField implements ForceField {
+    public final int width, height; //samples per row and column
+    public final double texel; //px between samples
+    final double[] values;
+    final double inverseTexel;
+    final double lastX, lastY; //largest scaled coordinates that still have a sample to the right and below
+
+    public SampledField(int widthValue, int heightValue, double texelValue){
+        width = Math.max(2, widthValue);
+        height = Math.max(2, heightValue);
+        texel = texelValue;
+        inverseTexel = 1 / texel;
+        lastX = Math.nextDown(width - 1.0);
+        lastY = Math.nextDown(height - 1.0);
+        values = new double[width * height * 2];
+    }
+
+    public static SampledField covering(double worldWidth, double worldHeight, double texel){ //empty field spanning [0, worldWidth] x [0, worldHeight]
+        return new SampledField((int) Math.ceil(worldWidth / texel) + 1, (int) Math.ceil(worldHeight / texel) + 1, texel);
+    }
+
+    public void set(int i, int j, double ax, double ay){
+        int k = (j * width + i) * 2;
+        values[k] = ax;
+        values[k + 1] = ay;
+    }
+
+    public void bake(ForceField field){ //adds field evaluated at every sample
+        double[] out = new double[2];
+        for (int j = 0; j < height; ++j){
+            for (int i = 0; i < width; ++i){
+                int k = (j * width + i) * 2;
+                out[0] = 0;
+                out[1] = 0;
+                field.accelerationAt(i * texel, j * texel, out);
+                values[k] += out[0];
+                values[k + 1] += out[1];
+            }
+        }
+    }
+
+    public static SampledField turbulence(long seed, double worldWidth, double worldHeight, double texel, double strength, double scale){
+        //curl of smoothed value noise: swirls about scale px across that never pile particles up in one place
+        SampledField field = covering(worldWidth, worldHeight, texel);
+        double h = texel / 2;
+        for (int j = 0; j < field.height; ++j){
+            for (int i = 0; i < field.width; ++i){
+                double x = i * texel, y = j * texel;
+                double dpdx = (potential(seed, (x + h) / scale, y / scale) - potential(seed, (x - h) / scale, y / scale)) / texel;
+                double dpdy = (potential(seed, x / scale, (y + h) / scale) - potential(seed, x / scale, (y - h) / scale)) / texel;
+                field.set(i, j, dpdy * strength * scale, -dpdx * strength * scale);
+            }
+        }
+        return field;
+    }
+
+    private static double potential(long seed, double x, double y){ //value noise in [-1, 1] with smoothstep between lattice points
+        int x0 = (int) Math.floor(x), y0 = (int) Math.floor(y);
+        double tx = x - x0, ty = y - y0;
+        tx = tx * tx * (3 - 2 * tx);
+        ty = ty * ty * (3 - 2 * ty);
+        double a = lattice(seed, x0, y0), b = lattice(seed, x0 + 1, y0);
+        double c = lattice(seed, x0, y0 + 1), d = lattice(seed, x0 + 1, y0 + 1);
+        double top = a + (b - a) * tx, bottom = c + (d - c) * tx;
+        return top + (bottom - top) * ty;
+    }
+
+    private static double lattice(long seed, int x, int y){
+        return StreamRandom.uniform(seed, StreamRandom.FIELD, 0, x, y) * 2 - 1;
+    }
+
+    @Override
+    public void accelerationAt(double x, double y, double[] out){
+        out[0] += sampleX(x, y);
+        out[1] += sampleY(x, y);
+    }
+
+    double sampleX(double x, double y){ //bilinear lookup of one component, ForcePipeline inlines the pair
+        return sample(x, y, 0);
+    }
+
+    double sampleY(double x, double y){
+        return sample(x, y, 1);
+    }
+
+    private double sample(double x, double y, int component){
+        double fx = x * inverseTexel, fy = y * inverseTexel;
+        if (fx < 0){fx = 0;} else if (fx > lastX){fx = lastX;}
+        if (fy < 0){fy = 0;} else if (fy > lastY){fy = lastY;}
+        int i = (int) fx, j = (int) fy;
+        double tx = fx - i, ty = fy - j;
+        int k = (j * width + i) * 2 + component, below = k + width * 2;
+        double top = values[k] + (values[k + 2] - values[k]) * tx;
+        double bottom = values[below] + (values[below + 2] - values[below]) * tx;
+        return top + (bottom - top) * ty;
+    }
+}
@@ -0,0 +1,979 @@
+package physics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdk.jfr.EventType;
+
+import metrics.FrameEvent;
+import metrics.SimulationMetrics;
+
+/**
+ * The particle simulation itself, independent of any window.
+ * Construct it from a SimulationConfig, then either call step(n) for fixed size frames
+ * or update(dt) with a measured dt, and read the state back through getParticles().
+ * Index 0 of the particle store is the cursor particle, which is parked outside the world
+ * until setCursor() is called.
+ * All randomness comes from StreamRandom keyed by the seed, so with the same seed, the same dt
+ * and the same pointer input per frame two runs are bit exact whatever the thread count.
+ *
+ * The number of substeps per frame adapts between config.minSubSteps and config.subSteps to the
+ * fastest particle and the mean overlap pushed apart in the last frame, and the substep dt is stretched so a
+ * frame always covers the same time. Particles in contact with something whose average velocity
+ * over config.sleepSteps substeps stays below config.sleepVelocity fall asleep: they skip forces and
+ * integration, act as fixed obstacles to awake particles, and pairs of sleeping particles skip
+ * collision solving. Sleepers only look again at what holds them up (and share heat with each other)
+ * every config.heatInterval substeps, 4 without heat. A sleeper wakes when something runs into it
+ * faster than the sleep velocity, when nothing holds it up any more or when an interactor reaches it.
+ *
+ * Particles can come and go between frames: getEmitters() spawns and removes them in regions at a rate,
+ * and ParticleStore.remove() may be called directly from the simulation thread. Either way the slots are
+ * compacted before the next substep.
+ *
+ * Touching particles exchange heat in a stage of its own, every config.heatInterval substeps after the
+ * collisions (see HeatDiffusion), so the narrow phase only records who touched whom.
+ *
+ * With config.metrics every frame records its phase times, pair counts, fullest cell, substeps and
+ * allocation into getMetrics(), and a FrameEvent when a flight recording asks for it.
+ */
+public class Simulation implements AutoCloseable {
+    /**
+     * Makes the simulation one part of a larger world (see distributed.SlabDomain).
+     * exchange() runs after integration and may remove, add and reorder particles. What it appends
+     * after the particles it owns are copies (ghosts) of a neighbour's particles near the edge, which
+     * collide like any other. release() runs after the collisions and drops the ghosts again.
+     */
+    public interface Domain {
+        void exchange(Simulation simulation);
+        void release(Simulation simulation);
+    }
+
+    private static final EventType FRAME_EVENT = EventType.getEventType(FrameEvent.class); //isEnabled() tells whether a recording is taking it
+
+    public final SimulationConfig config;
+
+    private ParticleStore particles;
+
+    private GridPartition grid;
+    private CompactNarrowPhase compactNarrowPhase; //reduced precision collisions, config.precision != 0
+    private boolean gridStale = true; //slots changed since grid was filled, so incremental binning has to start over
+    private int[] partitionColumn, partitionRow; //gridMode 0 cell offsets of every whole px, instead of two divisions per particle
+    private FlatGrid flatGrid;
+    private HierarchicalGrid levelGrid;
+    private SpatialHash hashGrid;
+    private MortonOrder mortonOrder;
+    private boolean vectorNarrowPhase; //flat grid collisions go through VectorNarrowPhase
+    private HeatDiffusion heat; //null when config.heatInterval is 0
+    private int gridWidth, gridHeight;
+    private int stripeColumns; //grid columns the collision stripes are cut from, the coarsest level's for gridMode 2
+
+    private StepScheduler scheduler;
+    private StepScheduler.RangeTask particleTask = this::updateParticlesRange; //created once, reused every substep
+    private StepScheduler.RangeTask stripeTask = this::solveStripeRange;
+    private double stepDt;
+    private int stripePass;
+
+    private int subSteps; //substeps of the current frame
+    private static final int CALM_FRAMES = 30; //frames in a row that could do with fewer substeps before one is removed
+    private int calmFrames;
+    private int sleepAfter; //restSteps at which a particle sleeps, MAX_VALUE when sleeping is off
+    private double restSpeed; //px per substep below which a particle counts as resting
+    private double restRadius2; //squared px a resting particle may drift from where it started resting
+    static final double SUPPORT_SLACK = 0.5; //px a sleeper may sit apart from whatever holds it up
+    private static final int SUPPORT_INTERVAL = 4; //substeps between support checks without heat
+    private int supportInterval; //substeps between the checks, the heat substeps when there are any
+    private boolean checkingSupport; //this substep pairs of sleepers are visited and sleepers find their support again
+    private final AtomicLong frameSpeed = new AtomicLong(); //largest squared px per substep seen this frame, as double bits
+    private final AtomicInteger sleeping = new AtomicInteger();
+    private double[] stripeOverlap; //overlap solved per stripe this frame, summed
+
+    private double energyLoss;
+    private double velocityLimit;
+    private int collisionStripeWidth;
+
+    private double time = 0; //ms of simulated time
+    private long frameCount = 0;
+    private boolean gracePeriodEnded = false;
+
+    private final PointerSlot pointer = new PointerSlot();
+    private long framePointer = PointerSlot.pack(Float.NaN, Float.NaN); //pointer sampled once per frame so every substep sees the same input
+    private final Interactors interactors;
+    private final Emitters emitters;
+    private final ForcePipeline forces;
+    private Domain domain;
+
+    private final SimulationMetrics metrics = new SimulationMetrics();
+    private long integrationNanos, binningNanos, exchangeNanos, collisionNanos, heatNanos; //this frame so far
+    private int[] pairTests, pairHits; //this frame per slot, only written by the thread solving that slot's cell
+
+    public Simulation(SimulationConfig config){
+        this(config, true);
+    }
+
+    public Simulation(SimulationConfig config, boolean spawnParticles){ //without spawning the store is left empty for the caller to fill
+        this.config = config;
+
+        gridWidth = config.gridWidth();
+        gridHeight = config.numPartitions;
+        if (config.gridMode == 0){
+            grid = new GridPartition(gridWidth, gridHeight);
+            partitionColumn = new int[config.worldWidth];
+            partitionRow = new int[config.worldHeight];
+            for (int x = 0; x < config.worldWidth; ++x){partitionColumn[x] = x/(config.worldWidth/gridWidth) * gridHeight;}
+            for (int y = 0; y < config.worldHeight; ++y){partitionRow[y] = y/(config.worldHeight/gridHeight);}
+        } else if (config.gridMode == 2){
+            double baseCell = Math.min((double) config.worldWidth/gridWidth, (double) config.worldHeight/gridHeight);
+            int maxRadius = config.maxParticleRadius;
+            if (maxRadius == 0){maxRadius = Math.max(config.particleSize + config.randomParticleSize, config.cursorSize);}
+            levelGrid = new HierarchicalGrid(baseCell, maxRadius, config.worldWidth, config.worldHeight);
+        } else if (config.gridMode == 3){
+            double cellSize = config.cellSize > 0 ? config.cellSize : Math.min((double) config.worldWidth/gridWidth, (double) config.worldHeight/gridHeight);
+            hashGrid = new SpatialHash(cellSize, Math.max(2, config.collisionStripeWidth));
+        } else {flatGrid = new FlatGrid(gridWidth, gridHeight, config.worldWidth, config.worldHeight);}
+        if (config.reorderInterval > 0){mortonOrder = new MortonOrder(Math.min((double) config.worldWidth/gridWidth, (double) config.worldHeight/gridHeight));}
+        if (config.precision != 0 && flatGrid != null){compactNarrowPhase = new CompactNarrowPhase(this, config.precision);}
+        vectorNarrowPhase = config.vectorCollisions && flatGrid != null && compactNarrowPhase == null && vectorApiAvailable();
+        stripeColumns = levelGrid != null ? levelGrid.width[levelGrid.levels - 1] : gridWidth;
+
+        if (config.numThreads != 0){scheduler = new StepScheduler(config.numThreads);}
+        if (config.heatInterval > 0){heat = new HeatDiffusion(scheduler);}
+
+        velocityLimit = config.velocityLimit;
+        if (velocityLimit == 0){velocityLimit = 999999;} //Set velocitylimit to 999 if "disabled" (when zero)
+        collisionStripeWidth = config.collisionStripeWidth;
+        if (collisionStripeWidth < 2){collisionStripeWidth = 2;} //narrower stripes would race on shared neighbours
+        stripeOverlap = new double[numCollisionStripes()];
+
+        subSteps = config.subSteps;
+        sleepAfter = config.sleepVelocity > 0 ? Math.max(1, config.sleepSteps) : Integer.MAX_VALUE;
+        supportInterval = config.heatInterval > 0 ? config.heatInterval : SUPPORT_INTERVAL;
+
+        interactors = new Interactors(config.interactorCapacity);
+        emitters = new Emitters(config.emitterCapacity, config.largestRadius());
+
+        particles = new ParticleStore(config.numParticles);
+        particles.seed = config.seed != 0 ? config.seed : StreamRandom.newSeed();
+        forces = new ForcePipeline(config.worldWidth, config.worldHeight, config.forceTexel);
+        if (config.gravityMode == 0){forces.add(AffineField.uniform(0, config.gravity));
+        } else {forces.add(AffineField.pull(config.worldWidth/2, config.worldHeight/2, 1.0/500));}
+        if (config.windX != 0 || config.windY != 0){forces.add(AffineField.uniform(config.windX, config.windY));}
+        if (config.turbulence != 0){
+            forces.add(SampledField.turbulence(particles.seed, config.worldWidth, config.worldHeight, config.forceTexel, config.turbulence, config.turbulenceScale));
+        }
+        pairTests = new int[particles.capacity()];
+        pairHits = new int[particles.capacity()];
+        if (spawnParticles){
+            if (config.layout == 1){spawnLattice();
+            } else if (config.layout == 2){spawnRandom();
+            } else {spawnSpiral();}
+        }
+        if (grid != null){grid.ensureCapacity(particles.capacity());}
+        if (flatGrid != null){flatGrid.ensureCapacity(particles.count);}
+        if (levelGrid != null){levelGrid.ensureCapacity(particles.count);}
+        if (hashGrid != null){hashGrid.ensureCapacity(particles.capacity());}
+        if (heat != null){heat.ensureCapacity(particles.capacity());}
+
+        energyLoss = config.energyLoss;
+        if (config.gracePeriod > 0) {energyLoss += 0.05;} else {gracePeriodEnded = true;} //Setup grace period by greatly increasing energy loss
+    }
+
+    private void spawnSpiral(){
+        int numParticles = config.numParticles;
+        for (float i = 0; i < numParticles; ++i) { // setup particles in a spiral to fill circle
+            double r = (i-1) * 300 / numParticles;
+            double theta = i / Math.PI / 2;
+            double a = Math.cos(theta) * r;
+            double b = Math.sin(theta) * r;
+            int c = HSVtoRGB(i/numParticles, 1, 1);
+
+            double size = spawnSize((int) i);
+            particles.add(config.worldWidth/2 + a, config.worldHeight/2 + b, (int) size, 10 + size, c);
+        }
+
+        //particles.set(numParticles-1, 400, 400, 25, 500, 0xFFFFFFFF);
+    }
+
+    private double spawnSize(int i){
+        return config.particleSize + StreamRandom.uniform(particles.seed, StreamRandom.SPAWN, 0, i, 0)*config.randomParticleSize;
+    }
+
+    private void spawnLattice(){ //centred square block, one particle per largest diameter, slot 0 in the middle becomes the cursor
+        int numParticles = config.numParticles;
+        double pitch = 2 * config.largestRadius();
+        int columns = (int) Math.ceil(Math.sqrt(numParticles - 1));
+        double left = config.worldWidth/2 - (columns - 1) * pitch / 2;
+        double top = config.worldHeight/2 - (columns - 1) * pitch / 2;
+        particles.add(config.worldWidth/2, config.worldHeight/2, config.particleSize, 10 + config.particleSize, 0xFFFFFFFF);
+        for (int i = 1; i < numParticles; ++i){
+            double size = spawnSize(i);
+            int c = HSVtoRGB((double) i/numParticles, 1, 1);
+            particles.add(left + (i - 1) % columns * pitch, top + (i - 1) / columns * pitch, (int) size, 10 + size, c);
+        }
+    }
+
+    private void spawnRandom(){ //uniform over the area inside the boundary, overlaps are pushed apart during the grace period
+        int numParticles = config.numParticles;
+        double cx = config.worldWidth/2, cy = config.worldHeight/2;
+        for (int i = 0; i < numParticles; ++i){
+            double u = StreamRandom.uniform(particles.seed, StreamRandom.SPAWN, 0, i, 1);
+            double v = StreamRandom.uniform(particles.seed, StreamRandom.SPAWN, 0, i, 2);
+            double x, y;
+            if (config.boundaryMode == 2){ //same circle as enforceBoundaryConditionCircular
+                double r = Math.sqrt(u) * 300, theta = v * 2 * Math.PI;
+                x = cx + Math.cos(theta) * r;
+                y = cy + Math.sin(theta) * r;
+            } else {
+                x = 20 + u * (config.worldWidth - 40);
+                y = 20 + v * (config.worldHeight - 40);
+            }
+            double size = spawnSize(i);
+            particles.add(x, y, (int) size, 10 + size, HSVtoRGB((double) i/numParticles, 1, 1));
+        }
+    }
+
+    public ParticleStore getParticles(){
+        return particles;
+    }
+
+    public double getTime(){
+        return time;
+    }
+
+    public long getFrameCount(){
+        return frameCount;
+    }
+
+    public long getSeed(){
+        return particles.seed;
+    }
+
+    public static boolean vectorApiAvailable(){ //the incubator module is only resolved when the JVM is started with --add-modules jdk.incubator.vector
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    public boolean isVectorNarrowPhase(){
+        return vectorNarrowPhase;
+    }
+
+    public int getSubSteps(){ //substeps the next frame will use
+        return subSteps;
+    }
+
+    public int getSleepingCount(){ //particles that slept through the last substep
+        return sleeping.get();
+    }
+
+    public SimulationMetrics getMetrics(){ //only recorded into with config.metrics
+        return metrics;
+    }
+
+    public boolean isGracePeriodEnded(){
+        return gracePeriodEnded;
+    }
+
+    public PointerSlot getPointer(){ //input threads publish the cursor position here
+        return pointer;
+    }
+
+    public Interactors getInteractors(){ //only modify from the simulation thread
+        return interactors;
+    }
+
+    public Emitters getEmitters(){ //only modify from the simulation thread
+        return emitters;
+    }
+
+    public void setDomain(Domain d){ //null to own the whole world again
+        domain = d;
+    }
+
+    public void ensureCapacity(int n){ //room for n particles in the store, the grids and the counters
+        particles.ensureCapacity(n);
+        int c = particles.capacity();
+        if (grid != null){grid.ensureCapacity(c);}
+        if (flatGrid != null){flatGrid.ensureCapacity(c);}
+        if (levelGrid != null){levelGrid.ensureCapacity(c);}
+        if (hashGrid != null){hashGrid.ensureCapacity(c);}
+        if (heat != null){heat.ensureCapacity(c);}
+        if (pairTests.length < c){
+            pairTests = Arrays.copyOf(pairTests, c);
+            pairHits = Arrays.copyOf(pairHits, c);
+        }
+    }
+
+    public ForcePipeline getForces(){ //gravity and the config's fields to start with, fields added here are not saved by checkpoints or input logs
+        return forces;
+    }
+
+    public void restoreClock(double simulationTime, long frame, boolean gracePeriodOver){ //used when resuming a saved run
+        time = simulationTime;
+        frameCount = frame;
+        if (gracePeriodOver && !gracePeriodEnded){energyLoss -= 0.05;}
+        if (!gracePeriodOver && gracePeriodEnded){energyLoss += 0.05;}
+        gracePeriodEnded = gracePeriodOver;
+    }
+
+    public int getCalmFrames(){ //frames in a row that could have done with fewer substeps, part of the adaptive state
+        return calmFrames;
+    }
+
+    public void restoreSubSteps(int n, int calm){ //the adaptive substep count of a saved run, velocities must already match it
+        subSteps = Math.max(1, Math.min(n, config.subSteps));
+        calmFrames = calm;
+    }
+
+    public void setCursor(double x, double y){
+        pointer.publish(x, y);
+    }
+
+    public void step(int frames){ //fixed dt frames, bit exact for a fixed seed
+        double dt = config.fixedDt();
+        for (int i = 0; i < frames; ++i){
+            update(dt);
+        }
+    }
+
+    public void update(double dt){ //one frame, dt is the substep length at config.subSteps substeps
+        update(dt, pointer.read());
+    }
+
+    public void update(double dt, long pointerPosition){ //same, with the pointer given as packed by PointerSlot (for replays)
+        framePointer = pointerPosition;
+        FrameEvent event = config.metrics && FRAME_EVENT.isEnabled() ? new FrameEvent() : null; //only while a recording wants it
+        if (event != null){event.begin();}
+        long allocated = config.metrics ? SimulationMetrics.threadAllocatedBytes() : 0;
+        if (time > config.gracePeriod && !gracePeriodEnded){ //End grace period
+            gracePeriodEnded = true;
+            energyLoss -= 0.05;}
+
+        int n = subSteps;
+        double substepDt = dt * config.subSteps / n; //fewer substeps each cover more time
+        restSpeed = config.sleepVelocity / n;
+        double restRadius = restSpeed * config.sleepSteps; //the sleep velocity held over the whole window
+        restRadius2 = restRadius * restRadius;
+        if (emitters.count != 0 || particles.liveCount() != particles.count){updatePopulation(n);}
+        for (int i = 0; i < n; ++i) {
+            substep(substepDt);
+        }
+
+        time += dt * config.subSteps / config.timeScale * 1000 / config.fps;
+        ++frameCount;
+        long resolved = sumAndClear(pairHits, pairHits.length); //slots may have been reordered, ghosts released or particles removed, the totals are the same
+        if (config.metrics){recordFrame(n, substepDt / config.timeScale * 1e9 / config.fps, allocated, resolved, event);}
+        integrationNanos = binningNanos = exchangeNanos = collisionNanos = heatNanos = 0;
+        adaptSubSteps(resolved);
+    }
+
+    private void updatePopulation(int n){ //this frame's spawns and removals, the substeps only ever see dense slots
+        if (domain != null){throw new IllegalStateException("particles cannot be spawned or removed with a Domain, ids from different workers would collide");}
+        int dead = particles.count - particles.liveCount();
+        if (emitters.apply(this, n) + dead != 0){gridStale = true;}
+    }
+
+    private static long sumAndClear(int[] counts, int n){
+        long sum = 0;
+        for (int p = 0; p < n; ++p){
+            sum += counts[p];
+            counts[p] = 0;
+        }
+        return sum;
+    }
+
+    private void recordFrame(int n, double substepNanos, long allocatedBefore, long resolved, FrameEvent event){
+        long tested = sumAndClear(pairTests, pairTests.length);
+        int fullest = maxCellOccupancy();
+        long allocated = allocatedBefore < 0 ? 0 : SimulationMetrics.threadAllocatedBytes() - allocatedBefore;
+
+        metrics.recordPhase(SimulationMetrics.INTEGRATION, integrationNanos);
+        metrics.recordPhase(SimulationMetrics.BINNING, binningNanos);
+        metrics.recordPhase(SimulationMetrics.COLLISIONS, collisionNanos);
+        if (domain != null){metrics.recordPhase(SimulationMetrics.EXCHANGE, exchangeNanos);}
+        if (heat != null){metrics.recordPhase(SimulationMetrics.HEAT, heatNanos);}
+        metrics.pairsTested.record(tested);
+        metrics.pairsResolved.record(resolved);
+        metrics.cellOccupancy.record(fullest);
+        metrics.subSteps.record(n);
+        metrics.substepDt.record(Math.round(substepNanos));
+        metrics.allocatedBytes.record(allocated);
+
+        if (event != null && event.shouldCommit()){
+            event.frame = frameCount;
+            event.subSteps = n;
+            event.integration = integrationNanos;
+            event.binning = binningNanos;
+            event.collisions = collisionNanos;
+            event.exchange = exchangeNanos;
+            event.heat = heatNanos;
+            event.pairsTested = tested;
+            event.pairsResolved = resolved;
+            event.maxCellOccupancy = fullest;
+            event.allocated = allocated;
+            event.commit();
+        }
+    }
+
+    private int maxCellOccupancy(){ //particles in the fullest cell of the current grid
+        if (flatGrid != null){return maxRun(flatGrid.cellStart, flatGrid.width * flatGrid.height);}
+        if (levelGrid != null){return maxRun(levelGrid.cellStart, levelGrid.cellStart.length - 1);}
+        if (hashGrid != null){return maxRun(hashGrid.cellStart, hashGrid.cellCount);}
+        int fullest = 0;
+        for (GridPartition.GridUnit unit : grid.partition){fullest = Math.max(fullest, unit.count);}
+        return fullest;
+    }
+
+    private static int maxRun(int[] cellStart, int cells){
+        int fullest = 0;
+        for (int c = 0; c < cells; ++c){fullest = Math.max(fullest, cellStart[c + 1] - cellStart[c]);}
+        return fullest;
+    }
+
+    void countCandidates(int p, int n){ //pairs the grid hands to the narrow phase for p
+        if (config.metrics){pairTests[p] += n;}
+    }
+
+    void countHit(int p){ //a pair with p that overlapped and was pushed apart, also counted without metrics for adaptSubSteps()
+        ++pairHits[p];
+    }
+
+    void recordContact(int p, int p2){ //for the heat stage, same threading rule as countHit
+        if (heat != null){heat.record(p, p2);}
+    }
+
+    boolean asleep(int p){
+        return particles.restSteps[p] >= sleepAfter;
+    }
+
+    boolean checkingSupport(){ //pairs of sleepers only matter on these substeps
+        return checkingSupport;
+    }
+
+    boolean strikes(int p, int sleeper){ //p closes in on the sleeper along their normal faster than the sleep velocity
+        ParticleStore s = particles;
+        double dx = s.x[sleeper] - s.x[p], dy = s.y[sleeper] - s.y[p];
+        double d = Math.sqrt(dx * dx + dy * dy);
+        return d != 0 && strikes(p, sleeper, dx / d, dy / d);
+    }
+
+    boolean strikes(int p, int sleeper, double ux, double uy){ //(ux, uy) is the unit normal from p towards the sleeper
+        ParticleStore s = particles; //vx and vy are this substep's velocities from before any push, pushes out of a resting contact never count
+        return (s.vx[p] - s.vx[sleeper]) * ux + (s.vy[p] - s.vy[sleeper]) * uy > restSpeed;
+    }
+
+    void support(int p, int p2, boolean asleep, boolean asleep2){ //p and p2 touch, a sleeper further down holds the other one up
+        if (asleep && below(p, p2)){particles.contact[p2] = true;}
+        if (asleep2 && below(p2, p)){particles.contact[p] = true;}
+    }
+
+    private boolean below(int q, int p){ //q is further along gravity than p, strict so support never goes round in a circle
+        ParticleStore s = particles;
+        if (config.gravityMode == 0){return s.y[q] > s.y[p];}
+        double cx = config.worldWidth/2, cy = config.worldHeight/2;
+        double qx = s.x[q] - cx, qy = s.y[q] - cy, px = s.x[p] - cx, py = s.y[p] - cy;
+        return qx * qx + qy * qy < px * px + py * py;
+    }
+
+    private boolean restsOnBoundary(ParticleStore s, int p){ //within SUPPORT_SLACK of the part of the boundary that holds it up, side walls have no friction
+        SimulationConfig c = config;
+        if (c.gravityMode != 0){return false;} //against the pull to the centre only the particles further in hold it up
+        if (c.boundaryMode == 1){return s.y[p] > c.worldHeight - 20 - SUPPORT_SLACK;}
+        if (c.boundaryMode == 2){
+            double ox = s.x[p] - c.worldWidth/2, oy = s.y[p] - c.worldHeight/2;
+            double limit = 300 - s.radius[p] - SUPPORT_SLACK;
+            return oy > 0 && ox * ox + oy * oy > limit * limit;
+        }
+        return false;
+    }
+
+    private boolean rises(ParticleStore s, int p){ //fire buoyancy beats gravity, see updateParticlesRange
+        double lift = s.temperature[p] * config.temperatureForceModifierVertical / s.mass[p];
+        return config.gravityMode == 0 ? lift > config.gravity : lift > 1; //the pull and the lift both grow with distance / 500
+    }
+
+    private void adaptSubSteps(long pushes){ //picks the substep count of the next frame from what this frame measured
+        double speed = Math.sqrt(Double.longBitsToDouble(frameSpeed.getAndSet(0))) * subSteps; //px per frame
+        double overlap = 0;
+        for (int i = 0; i < stripeOverlap.length; ++i){
+            overlap += stripeOverlap[i];
+            stripeOverlap[i] = 0;
+        }
+        if (pushes != 0){overlap /= pushes;} //the mean, a resting pile always has a few deep contacts whatever the substeps
+        if (config.minSubSteps <= 0 || config.minSubSteps >= config.subSteps){return;}
+
+        int wanted = (int) Math.ceil(speed / config.maxStepDisplacement);
+        //resting overlap comes from gravity acting for one substep, so it grows with dt squared as substeps are removed
+        wanted = Math.max(wanted, (int) Math.ceil(subSteps * Math.sqrt(overlap / config.overlapTolerance)));
+        wanted = Math.max(config.minSubSteps, Math.min(wanted, config.subSteps));
+        calmFrames = wanted < subSteps ? calmFrames + 1 : 0;
+        if (wanted < subSteps){ //back off one at a time once the pile had time to settle at the last count, add substeps at once
+            if (calmFrames < CALM_FRAMES){return;}
+            wanted = subSteps - 1;
+            calmFrames = 0;
+        }
+        if (wanted != subSteps){
+            particles.scaleVelocity(0, particles.count, (double) subSteps / wanted);
+            subSteps = wanted;
+        }
+    }
+
+    public void substep(double dt){
+        long start = System.nanoTime();
+        ++particles.step;
+        checkingSupport = particles.step % supportInterval == 0;
+        if (heat != null){heat.recording = checkingSupport;}
+        if (mortonOrder != null && particles.step % config.reorderInterval == 0){ //cells are recomputed right after
+            mortonOrder.reorder(particles);
+            gridStale = true;
+        }
+        long integrated = System.nanoTime();
+        forces.compile(); //no-op unless fields changed
+        updateParticles(dt); //also computes every particle's cell, counted as integration since it is fused into the same pass
+        updateCursorParticle();
+        long exchanged = System.nanoTime();
+        if (domain != null){
+            domain.exchange(this);
+            computeCells(); //slots moved and ghosts arrived since integration binned them
+            gridStale = true;
+        }
+        long binned = System.nanoTime();
+        partitionParticles();
+        long solved = System.nanoTime();
+
+        if (scheduler == null){solveCollisions();
+        } else {solveCollisionsThreaded();}
+        long collided = System.nanoTime();
+        if (heat != null && heat.recording){heat.run(particles, config.heatInterval);} //before release, ghosts are still in their slots
+        long diffused = System.nanoTime();
+        if (domain != null){domain.release(this);}
+
+        long end = System.nanoTime();
+        binningNanos += (integrated - start) + (solved - binned);
+        integrationNanos += exchanged - integrated;
+        exchangeNanos += binned - exchanged;
+        collisionNanos += (collided - solved) + (end - diffused);
+        heatNanos += diffused - collided;
+    }
+
+    private void computeCells(){
+        int n = particles.count;
+        if (flatGrid != null){flatGrid.computeCells(particles, 0, n);
+        } else if (levelGrid != null){levelGrid.computeCells(particles, 0, n);
+        } else if (hashGrid != null){hashGrid.computeCells(particles, 0, n);}
+    }
+
+    public void updateCursorParticle(){ //invisible particle following the cursor to interact with simulation
+        long position = framePointer;
+        double mx = -1e9, my = -1e9; //parked far outside the world without a pointer
+        if (PointerSlot.isPresent(position)){
+            mx = PointerSlot.x(position);
+            my = PointerSlot.y(position);
+            interactors.follow(mx, my);
+        }
+        particles.set(0, mx, my, config.cursorSize, config.cursorStrength, 0xFFFFFFFF); //slot 0 is reused in place
+        particles.temperature[0] = 1000;
+    }
+
+    public void updateParticles(double dt){
+        stepDt = dt;
+        sleeping.set(0);
+        if (scheduler == null){updateParticlesRange(0, particles.count);
+        } else {scheduler.parallelFor(particles.count, particleTask);}
+    }
+
+    public void updateParticlesRange(int from, int to){ //forces, integration, boundary and grid binning for one chunk
+        ParticleStore s = particles;
+        SimulationConfig c = config;
+        double dt = stepDt;
+        double cx = c.worldWidth/2, cy = c.worldHeight/2;
+        int asleep = 0;
+        for (int p = from; p < to; ++p) {
+            if (p != 0 && sleepAfter != Integer.MAX_VALUE){ //drift from where it started resting, so contact jitter averages out
+                double dx = s.x[p] - s.restx[p], dy = s.y[p] - s.resty[p];
+                boolean supported = s.contact[p]; //held up by the boundary or a sleeper below, sleepers losing that wake up
+                if (supported && s.restSteps[p] != 0 && dx * dx + dy * dy < restRadius2){
+                    if (s.restSteps[p] < sleepAfter){++s.restSteps[p];}
+                } else {
+                    s.restx[p] = s.x[p];
+                    s.resty[p] = s.y[p];
+                    s.restSteps[p] = 1;
+                }
+                if (checkingSupport || s.restSteps[p] < sleepAfter){s.contact[p] = false;} //sleepers keep theirs between checks, new ones too
+
+                if (s.restSteps[p] >= sleepAfter){
+                    s.ax[p] = 0;
+                    s.ay[p] = 0;
+                    if (interactors.count != 0){interactors.accelerate(s, p);}
+                    if (s.ax[p] == 0 && s.ay[p] == 0 && !(c.doFireSimulation && rises(s, p))){ //zero velocity and acceleration, integrate() leaves it in place
+                        s.stop(p);
+                        s.temperature[p] *= c.temperatureLoss; //keeps cooling, the floor and heat stage warm it like anyone else
+                        ++asleep;
+                        continue;
+                    }
+                    s.restSteps[p] = 0; //an interactor reached it or it is hot enough to rise
+                }
+            }
+
+            forces.apply(s, p); //gravity and every other position dependent field in one go
+            if (interactors.count != 0){interactors.accelerate(s, p);}
+
+            s.applyForce(p, -(s.x[p] - s.lastx[p])*c.drag, -(s.y[p] - s.lasty[p])*c.drag); //apply "air resitance"
+
+            if (c.doFireSimulation){
+                double verticalStrength = s.temperature[p]*c.temperatureForceModifierVertical;
+                double horizontalStrength = s.temperature[p]*c.temperatureForceModifierHorizontal;
+                if (c.gravityMode == 0){
+                    double dir = 1;
+                    if (StreamRandom.uniform(s.seed, StreamRandom.FIRE, s.step, p, 0) > 0.5){dir*=-1;};
+                    s.applyForce(p, StreamRandom.uniform(s.seed, StreamRandom.FIRE, s.step, p, 1)*dir*horizontalStrength, -verticalStrength);
+                } else { //rise away from the centre
+                    s.applyForce(p, (s.x[p] - cx)/500 * verticalStrength, (s.y[p] - cy)/500 * verticalStrength);
+                }
+            }
+
+            s.temperature[p] *= c.temperatureLoss;
+        }
+
+        s.integrate(from, to, dt);
+
+        double fastest = 0;
+        for (int p = Math.max(from, 1); p < to; ++p) { //cursor at index 0 ignores the boundary
+            if (s.restSteps[p] >= sleepAfter){ //asleep, only check it still rests on the floor
+                if (restsOnBoundary(s, p)){
+                    s.contact[p] = true;
+                    if (heat != null && c.boundaryMode == 1){heat.touchFloor(s, p);}
+                }
+                continue;
+            }
+            if (c.boundaryMode != 0){
+                boolean collision = false;
+                if (c.boundaryMode == 1){
+                    if (heat != null && s.y[p] > c.worldHeight - 20){heat.touchFloor(s, p);} //the heat stage warms it up
+                    collision = s.enforceBoundaryCondition(p, c.worldWidth, c.worldHeight, 20);} else{
+                collision = s.enforceBoundaryConditionCircular(p, cx, cy, 300);}
+                if (collision) {
+                    s.slowdown(p, c.wallEnergyLoss);
+                    if (restsOnBoundary(s, p)){s.contact[p] = true;}}
+            }
+
+            double v2 = s.vx[p] * s.vx[p] + s.vy[p] * s.vy[p];
+            if (v2 > velocityLimit){
+                s.slowdown(p, c.velocitySlowdownFactor);
+            }
+            if (v2 > fastest){fastest = v2;}
+        }
+        long bits = Double.doubleToLongBits(fastest); //non negative doubles order like their bits
+        for (long seen = frameSpeed.get(); bits > seen && !frameSpeed.compareAndSet(seen, bits); seen = frameSpeed.get()){}
+        if (asleep != 0){sleeping.addAndGet(asleep);}
+
+        if (flatGrid != null){flatGrid.computeCells(s, from, to);
+        } else if (levelGrid != null){levelGrid.computeCells(s, from, to);
+        } else if (hashGrid != null){hashGrid.computeCells(s, from, to);}
+    }
+
+    public double solvePairCollision(int p, int p2){ //returns the overlap that was solved
+        if (p == p2){return 0;}
+        int[] rest = particles.restSteps;
+        boolean asleep = rest[p] >= sleepAfter, asleep2 = rest[p2] >= sleepAfter;
+        if (asleep && asleep2){ //resting contacts stay as they are until one side wakes, but still hold each other up and share heat
+            if (!checkingSupport){return 0;}
+            double dx = particles.x[p] - particles.x[p2], dy = particles.y[p] - particles.y[p2];
+            double reach = particles.radius[p] + particles.radius[p2] + SUPPORT_SLACK;
+            if (dx * dx + dy * dy < reach * reach){
+                support(p, p2, true, true);
+                recordContact(p, p2);
+            }
+            return 0;
+        }
+
+        double overlap;
+        if (asleep){ //sleepers do not move, only something running into them faster than the sleep velocity wakes them
+            overlap = ParticleStore.resolveOverlap(particles, p, particles, p2, true);
+            if (overlap > 0 && strikes(p2, p)){rest[p] = 0;}
+        } else if (asleep2){
+            overlap = ParticleStore.resolveOverlap(particles, p2, particles, p, true);
+            if (overlap > 0 && strikes(p, p2)){rest[p2] = 0;}
+        } else {
+            overlap = ParticleStore.resolveOverlap(particles, p, particles, p2);
+        }
+        if (overlap > 0) {
+            particles.slowdown(p, energyLoss);
+            particles.slowdown(p2, energyLoss);
+            support(p, p2, asleep, asleep2);
+            recordContact(p, p2);
+            countHit(p);}
+        return overlap;
+    }
+
+    public double solveUnitCollisions(int p, int partitionIndex){
+        double overlap = 0;
+        if (flatGrid != null){
+            int[] items = flatGrid.cellItems;
+            countCandidates(p, flatGrid.end(partitionIndex) - flatGrid.begin(partitionIndex));
+            for (int k = flatGrid.begin(partitionIndex), end = flatGrid.end(partitionIndex); k < end; ++k){
+                overlap += solvePairCollision(p, items[k]);
+            }
+        } else {
+            GridPartition.GridUnit unit = grid.partition[partitionIndex];
+            int[] items = unit.objects;
+            countCandidates(p, unit.count);
+            for (int k = 0, end = unit.count; k < end; ++k){
+                overlap += solvePairCollision(p, items[k]);
+            }
+        }
+        return overlap;
+    }
+
+    public double solveNeighbourCollisions(int p, int x, int y){ //all adjacent units that exist
+        double overlap = 0;
+        for (int nx = x - 1; nx <= x + 1; ++nx){
+            if (nx < 0 || nx >= gridWidth){continue;}
+            for (int ny = y - 1; ny <= y + 1; ++ny){
+                if (ny < 0 || ny >= gridHeight){continue;}
+                overlap += solveUnitCollisions(p, nx * gridHeight + ny);
+            }
+        }
+        return overlap;
+    }
+
+    public double solveCellCollisions(int x, int y){
+        int i = x * gridHeight + y;
+        double overlap = 0;
+        if (compactNarrowPhase != null){return compactNarrowPhase.solveCell(x, y);}
+        if (vectorNarrowPhase){return VectorNarrowPhase.solveCell(this, particles, flatGrid, x, y);}
+        if (flatGrid != null){
+            int[] items = flatGrid.cellItems;
+            for (int k = flatGrid.begin(i), end = flatGrid.end(i); k < end; ++k){
+                overlap += solveNeighbourCollisions(items[k], x, y);
+            }
+        } else {
+            GridPartition.GridUnit unit = grid.partition[i];
+            for (int k = 0; k < unit.count; ++k){
+                overlap += solveNeighbourCollisions(unit.objects[k], x, y);
+            }
+        }
+        return overlap;
+    }
+
+    public double solveLevelNeighbourCollisions(int p, int level, int x, int y){ //3x3 cells around (x, y) of one level of the hierarchical grid
+        HierarchicalGrid g = levelGrid;
+        int[] items = g.cellItems;
+        int w = g.width[level], h = g.height[level], first = g.offset[level];
+        double overlap = 0;
+        for (int nx = x - 1; nx <= x + 1; ++nx){
+            if (nx < 0 || nx >= w){continue;}
+            for (int ny = y - 1; ny <= y + 1; ++ny){
+                if (ny < 0 || ny >= h){continue;}
+                int cell = first + nx * h + ny;
+                countCandidates(p, g.end(cell) - g.begin(cell));
+                for (int k = g.begin(cell), end = g.end(cell); k < end; ++k){
+                    overlap += solvePairCollision(p, items[k]);
+                }
+            }
+        }
+        return overlap;
+    }
+
+    public double solveLevelColumns(int from, int to){ //from and to are columns of the coarsest level, every level's cells below them
+        HierarchicalGrid g = levelGrid;
+        int top = g.levels - 1;
+        double overlap = 0;
+        for (int level = 0; level <= top; ++level){
+            if (g.levelCount[level] == 0){continue;}
+            int shift = top - level, h = g.height[level];
+            int end = Math.min(g.width[level], to << shift);
+            for (int x = from << shift; x < end; ++x){
+                for (int y = 0; y < h; ++y){
+                    int cell = g.offset[level] + x * h + y;
+                    for (int k = g.begin(cell), last = g.end(cell); k < last; ++k){
+                        int p = g.cellItems[k];
+                        overlap += solveLevelNeighbourCollisions(p, level, x, y);
+                        for (int coarser = level + 1; coarser <= top; ++coarser){ //larger particles, checked from this side only
+                            if (g.levelCount[coarser] == 0){continue;}
+                            int d = coarser - level;
+                            overlap += solveLevelNeighbourCollisions(p, coarser, x >> d, y >> d);
+                        }
+                    }
+                }
+            }
+        }
+        return overlap;
+    }
+
+    public double solveHashCellCollisions(int cell){ //every particle of an occupied cell against the 3x3 cells around it
+        SpatialHash g = hashGrid;
+        int[] items = g.cellItems;
+        int x = g.cellX[cell], y = g.cellY[cell];
+        double overlap = 0;
+        for (int nx = x - 1; nx <= x + 1; ++nx){
+            for (int ny = y - 1; ny <= y + 1; ++ny){
+                int other = g.find(nx, ny); //looked up once per cell rather than once per particle
+                if (other < 0){continue;}
+                for (int k = g.begin(cell), end = g.end(cell); k < end; ++k){
+                    int p = items[k];
+                    countCandidates(p, g.end(other) - g.begin(other));
+                    for (int k2 = g.begin(other), end2 = g.end(other); k2 < end2; ++k2){
+                        overlap += solvePairCollision(p, items[k2]);
+                    }
+                }
+            }
+        }
+        return overlap;
+    }
+
+    public double collisionReach(){ //px a push can travel in one substep's collisions, a stripe plus a neighbouring column per pass
+        double column = hashGrid != null ? hashGrid.cellSize
+                : levelGrid != null ? levelGrid.cellSize[levelGrid.levels - 1]
+                : (double) config.worldWidth / stripeColumns;
+        return 2 * (collisionStripeWidth + 1) * column;
+    }
+
+    public int numCollisionStripes(){
+        if (hashGrid != null){return hashGrid.stripeCount;} //changes every rebuild, stripes only exist where particles are
+        return (stripeColumns + collisionStripeWidth - 1) / collisionStripeWidth;
+    }
+
+    public void solveStripeCollisions(int stripe){ //only the thread solving a stripe writes its overlap slot
+        int end = Math.min(stripeColumns, (stripe + 1) * collisionStripeWidth);
+        double overlap = stripeOverlap[stripe];
+        if (hashGrid != null){
+            SpatialHash g = hashGrid;
+            for (int cell = g.stripeFirst[stripe], last = g.stripeEnd[stripe]; cell < last; ++cell){
+                overlap += solveHashCellCollisions(cell);
+            }
+        } else if (levelGrid != null){
+            overlap += solveLevelColumns(stripe * collisionStripeWidth, end);
+        } else {
+            for (int x = stripe * collisionStripeWidth; x < end; ++x){
+                for (int y = 0; y < gridHeight; ++y){
+                    overlap += solveCellCollisions(x, y);
+                }
+            }
+        }
+        stripeOverlap[stripe] = overlap;
+    }
+
+    public void solveCollisions(){ //same stripe order as the threaded solver so both give the same result
+        if (compactNarrowPhase != null){compactNarrowPhase.gather(particles, flatGrid, sleepAfter, energyLoss);}
+        int stripes = numCollisionStripes();
+        for (int pass = 0; pass < 2; ++pass){
+            for (int stripe = pass; stripe < stripes; stripe += 2){
+                solveStripeCollisions(stripe);
+            }
+        }
+        if (compactNarrowPhase != null){compactNarrowPhase.scatter();}
+    }
+
+    public void solveCollisionsThreaded(){
+        if (compactNarrowPhase != null){compactNarrowPhase.gather(particles, flatGrid, sleepAfter, energyLoss);}
+        int stripes = numCollisionStripes();
+        for (int pass = 0; pass < 2; ++pass){ //stripes of one parity never share a neighbouring cell
+            stripePass = pass;
+            scheduler.parallelFor((stripes - pass + 1) / 2, 1, stripeTask);
+        }
+        if (compactNarrowPhase != null){compactNarrowPhase.scatter();}
+    }
+
+    public void solveStripeRange(int from, int to){ //from and to count stripes of the current pass
+        for (int k = from; k < to; ++k){
+            solveStripeCollisions(stripePass + 2 * k);
+        }
+    }
+
+    public void partitionParticles(){
+        if (flatGrid != null){ //cells were computed alongside integration, only the cursor moved since
+            flatGrid.cellOf[0] = flatGrid.cellIndex(particles.x[0], particles.y[0]);
+            flatGrid.sort(particles.count);
+            return;
+        }
+        if (levelGrid != null){
+            levelGrid.cellOf[0] = levelGrid.cellIndex(levelGrid.levelOf(particles.radius[0]), particles.x[0], particles.y[0]);
+            levelGrid.sort(particles.count);
+            return;
+        }
+        if (hashGrid != null){ //no bounds, particles keep colliding wherever they go
+            hashGrid.keyOf[0] = SpatialHash.key(hashGrid.cellX(particles.x[0]), hashGrid.cellY(particles.y[0]));
+            sortHashGrid();
+            return;
+        }
+
+        int n = particles.count;
+        if (config.incrementalGrid && !gridStale && grid.tracked == n && particles.step % config.gridRebuildInterval != 0){
+            double[] x = particles.x, y = particles.y;
+            int[] cellOf = grid.cellOf;
+            for (int index = 0; index < n; ++index){ //most particles stay in their cell for many substeps
+                int cell = partitionCell(x[index], y[index]);
+                if (cell != cellOf[index]){grid.move(index, cell);}
+            }
+            return;
+        }
+        grid.clear(); //full rebuild, also the periodic one that puts every list back in index order
+        grid.ensureCapacity(n);
+        for (int index = 0; index < n; ++index){
+            grid.insert(index, partitionCell(particles.x[index], particles.y[index]));
+        }
+        gridStale = false;
+    }
+
+    private int partitionCell(double x, double y){ //cell of gridMode 0, -1 off screen
+        int w = config.worldWidth, h = config.worldHeight;
+        if (!(1 < x && x < w - 1 && 1 < y && y < h - 1)){return -1;}
+        return partitionColumn[(int) x] + partitionRow[(int) y];
+    }
+
+    private void sortHashGrid(){
+        hashGrid.sort(particles.count);
+        if (stripeOverlap.length < hashGrid.stripeCount){ //grows with the occupied stripes, kept afterwards
+            stripeOverlap = Arrays.copyOf(stripeOverlap, hashGrid.stripeCount);
+        }
+    }
+
+    public void publishSnapshot(SnapshotBuffer buffer){ //copies the drawable state for another thread, call between frames
+        buffer.writable().copyFrom(particles, frameCount, time);
+        buffer.publish();
+    }
+
+    public void rebuildGrid(){ //bins every particle from scratch, for when positions changed outside of a substep
+        if (flatGrid != null){
+            flatGrid.build(particles);
+        } else if (levelGrid != null){
+            levelGrid.build(particles);
+        } else if (hashGrid != null){
+            hashGrid.ensureCapacity(particles.count);
+            hashGrid.computeCells(particles, 0, particles.count);
+            sortHashGrid();
+        } else {
+            gridStale = true;
+            partitionParticles();
+        }
+    }
+
+    @Override
+    public void close(){
+        if (scheduler != null){scheduler.shutdown();}
+    }
+
+    public static int HSVtoRGB(double hue, double saturation, double value) { //packed ARGB
+        int h = (int)(hue * 6);
+        double f = hue * 6 - h;
+        double p = value * (1 - saturation);
+        double q = value * (1 - f * saturation);
+        double t = value * (1 - (1 - f) * saturation);
+
+        switch (h) {
+          case 0: return rgb(value, t, p);
+          case 1: return rgb(q, value, p);
+          case 2: return rgb(p, value, t);
+          case 3: return rgb(p, q, value);
+          case 4: return rgb(t, p, value);
+          case 5: return rgb(value, p, q);
+          default: return 0;
+        }
+    }
+
+    public static int rgb(double r, double g, double b) {
+        int rs = ((int)(r * 255));
+        int gs = ((int)(g * 255));
+        int bs = ((int)(b * 255));
+        return 0xFF000000 | (rs << 16) | (gs << 8) | bs;
+    }
+}
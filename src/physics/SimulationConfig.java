@@ -0,0 +1,147 @@
+package physics;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All parameters of a Simulation. Change the fields before constructing the Simulation.
+ * io.Scenario sets them from a file by name, validate() reports combinations that cannot work and
+ * autoTune() picks the grid and thread count for the particle size and the machine.
+ */
+public class SimulationConfig {
+    //nice presets:
+    // 10 000 particles, 15 sub steps, 180 partitions, 0 energy loss, 5 threads, gravity mode
+
+    public int worldWidth = 800, worldHeight = 800;
+
+    public int numParticles = 6000;
+    public int particleSize = 3;
+    public int randomParticleSize = 2; //random scaling variance
+    public int layout = 0; //initial particles: 0 = spiral 1 = square lattice 2 = random, io.Scenario can also load them from a file
+
+    //performance
+    public double fps = 60; // Higher fps tends to yield more accuracy if there is no lag
+    public double timeScale = 1; // Speed of the simulation
+    public int subSteps = 16; // The faster the simulaton or the more particles there are, the larger subSteps should be for stability
+    public int minSubSteps = 4; //adaptive substepping: each frame uses between minSubSteps and subSteps, 0 = always subSteps
+    public double maxStepDisplacement = 1; //px the fastest particle may move in one substep before more substeps are used
+    public double overlapTolerance = 0.25; //mean px of overlap per push in a frame before more substeps are used
+    public int numPartitions = 100; //Number of spacial partitions to split elements into
+    public int gridMode = 1; //0 = list per partition 1 = counting sort flat grid (no allocation per step) 2 = hierarchical grid, one level per size class
+    //3 = sparse hash grid without bounds, for boundaryMode 0 and worlds larger than the window
+    public double cellSize = 0; //px per cell of gridMode 3, 0 = same cells as the other grids
+    public int precision = 0; //positions while gridMode 1 solves collisions: 0 = double, 1 = float32, 2 = 32-bit fixed point relative to the cell, see CompactNarrowPhase
+    public boolean vectorCollisions = true; //SIMD narrow phase for gridMode 1 when run with --add-modules jdk.incubator.vector, same results either way
+    public boolean incrementalGrid = false; //gridMode 0 moves only the particles that changed cell instead of rebinning all of them each substep
+    public int gridRebuildInterval = 64; //substeps between full rebuilds of the incremental grid, which restore the order full rebinning gives
+    public int reorderInterval = 256; //substeps between sorting particle storage along a Morton curve for cache locality, 0 = never
+    public boolean metrics = true; //per frame phase timers and counters, see Simulation.getMetrics()
+    public int maxParticleRadius = 0; //largest radius gridMode 2 is sized for, 0 = largest spawned or cursor radius
+
+    //collisions are solved in column stripes, even stripes first then odd ones, so threads never touch neighbouring cells
+    public int numThreads = 0; //set to zero to disable threading, results are identical for any thread count
+    public int collisionStripeWidth = 2; //columns per stripe, must be at least 2 so stripes solved together share no neighbours
+
+    public double drag = 1; //air resistance
+    public double energyLoss = 0.00; //Amount of speed to lose on each collision, 0 = none, 1 = all
+    public double wallEnergyLoss = 0.05; //Amount of speed to lose on each wall collision, 0 = none, 1 = all
+
+    public int boundaryMode = 1; //0 = No boundary 1 = rectangular boundary (buggy) 2 = circular boundary
+    public int gravityMode = 0; //0 = normal gravity 1 = move to center
+    public double gravity = 0.5;
+    //more fields can be composed through Simulation.getForces(), these cover the common ones
+    public double windX = 0, windY = 0; //uniform push on top of gravity
+    public double turbulence = 0; //strength of a swirling field that never bunches particles up, 0 = off
+    public double turbulenceScale = 64; //px across one swirl
+    public double forceTexel = 8; //px between the samples of the baked force field (turbulence, attractors, vortices)
+
+    public double velocityLimit = 40; //set to 0 to not restrict velocity, improves stability
+    public double velocitySlowdownFactor = 0.9; //When attempting to restrict velocity, how much to slow down
+
+    public double sleepVelocity = 0.5; //px per frame below which a particle starts to fall asleep, 0 = never sleep
+    public int sleepSteps = 32; //substeps a particle has to stay that slow before it sleeps, sleeping particles skip forces and resting contacts
+
+    public long seed = 0; //0 = new seed every run, anything else makes runs bit exact at any thread count (fixed dt and same input)
+
+    public double gracePeriod = 1000; //ms of simulated time to have extra energy loss to get simulation into stable state
+
+    public double cursorStrength = 30; //mass of cursor particle
+    public int cursorSize = 10; //radius of cursor particle
+    public int interactorCapacity = 8; //max attractors and repellers, see Simulation.getInteractors()
+    public int emitterCapacity = 8; //max emitters and sinks, see Simulation.getEmitters()
+
+    public boolean doFireSimulation = false;
+    public double temperatureLoss = 0.995;
+    public int heatInterval = 4; //substeps between heat exchange passes (touching particles, the floor), 0 = temperatures never spread
+    public double temperatureForceModifierVertical = 1;
+    public double temperatureForceModifierHorizontal = 0;
+
+    public double fixedDt(){ //substep dt of a deterministic frame
+        return timeScale / subSteps;
+    }
+
+    public int largestRadius(){ //spawned sizes are particleSize + [0, randomParticleSize) rounded down, maxParticleRadius covers anything added later
+        int spawned = randomParticleSize > 0 ? particleSize + randomParticleSize - 1 : particleSize;
+        return Math.max(spawned, maxParticleRadius);
+    }
+
+    public int gridWidth(){ //columns of gridModes 0, 1 and 2, the rows are numPartitions
+        return gridWidth(numPartitions);
+    }
+
+    public void validate(){ //throws IllegalArgumentException naming every problem at once
+        List<String> problems = new ArrayList<>();
+        if (worldWidth <= 0 || worldHeight <= 0){problems.add("worldWidth and worldHeight must be positive");}
+        if (numParticles < 1){problems.add("numParticles must be at least 1, slot 0 is the cursor");}
+        if (particleSize < 1 || randomParticleSize < 0){problems.add("particleSize must be at least 1 and randomParticleSize not negative");}
+        if (layout < 0 || layout > 2){problems.add("layout must be 0, 1 or 2");}
+        if (fps <= 0 || timeScale <= 0){problems.add("fps and timeScale must be positive");}
+        if (subSteps < 1 || minSubSteps < 0){problems.add("subSteps must be at least 1 and minSubSteps not negative");}
+        if (gridMode < 0 || gridMode > 3){problems.add("gridMode must be 0, 1, 2 or 3");}
+        if (boundaryMode < 0 || boundaryMode > 2){problems.add("boundaryMode must be 0, 1 or 2");}
+        if (gravityMode < 0 || gravityMode > 1){problems.add("gravityMode must be 0 or 1");}
+        if (numThreads < 0){problems.add("numThreads must not be negative");}
+        if (collisionStripeWidth < 2){problems.add("collisionStripeWidth must be at least 2, narrower stripes solved together share neighbours");}
+        if (precision < 0 || precision > 2){problems.add("precision must be 0 (double), 1 (float32) or 2 (fixed point)");
+        } else if (precision != 0 && gridMode != 1){problems.add("precision " + precision + " needs gridMode 1");}
+        if (heatInterval < 0){problems.add("heatInterval must not be negative");}
+        if (gridRebuildInterval < 1){problems.add("gridRebuildInterval must be at least 1");}
+        if (reorderInterval < 0 || interactorCapacity < 0 || emitterCapacity < 0){problems.add("reorderInterval, interactorCapacity and emitterCapacity must not be negative");}
+        if (energyLoss < 0 || energyLoss > 1 || wallEnergyLoss < 0 || wallEnergyLoss > 1){problems.add("energyLoss and wallEnergyLoss must be within [0, 1]");}
+        if (sleepVelocity > 0 && sleepSteps < 1){problems.add("sleepSteps must be at least 1 when sleepVelocity is set");}
+
+        if (numPartitions < 1 || (gridMode != 3 && gridWidth() < 1)){
+            problems.add("numPartitions is too small for a " + worldWidth + "x" + worldHeight + " world");
+        } else if (worldWidth > 0 && worldHeight > 0){
+            int diameter = 2 * largestRadius();
+            double cell = Math.min((double) worldWidth / gridWidth(), (double) worldHeight / numPartitions);
+            if (gridMode == 3 && cellSize > 0){cell = cellSize;}
+            if (gridMode == 2){
+                if (maxParticleRadius != 0 && maxParticleRadius < largestRadius()){problems.add("maxParticleRadius is below the largest spawned radius " + largestRadius());}
+            } else if (cell < diameter){ //the 3x3 neighbourhood would miss contacts
+                problems.add(String.format("cells of %.1f px are smaller than the largest particle (%d px across), lower numPartitions or use gridMode 2", cell, diameter));
+            }
+            if (gridMode == 0 && (worldWidth % gridWidth() != 0 || worldHeight % numPartitions != 0)){ //GridPartition bins with integer cell sizes
+                problems.add("gridMode 0 needs the world size to be a multiple of the grid, " + gridWidth() + "x" + numPartitions + " does not divide " + worldWidth + "x" + worldHeight);
+            }
+        }
+        if (!problems.isEmpty()){throw new IllegalArgumentException(String.join("; ", problems));}
+    }
+
+    public void autoTune(int cores){ //finest grid that still finds every contact, and threads for cores (0 = all of them)
+        int radius = gridMode == 2 ? particleSize : largestRadius(); //the hierarchical grid sizes its base level for the smallest particles
+        int partitions = (int) (Math.min(worldHeight, (double) worldWidth * worldWidth / worldHeight) / (2 * radius));
+        if (gridMode == 0){ //integer cell sizes, step down to a grid that divides the world
+            while (partitions > 1 && (worldHeight % partitions != 0 || gridWidth(partitions) < 1 || worldWidth % gridWidth(partitions) != 0)){--partitions;}
+        }
+        numPartitions = Math.max(1, partitions);
+
+        if (cores <= 0){cores = Runtime.getRuntime().availableProcessors();}
+        int stripesPerPass = Math.max(1, gridWidth() / Math.max(2, collisionStripeWidth) / 2);
+        //a few thousand particles take less time per phase than waking the workers
+        numThreads = cores <= 1 || numParticles < 2000 ? 0 : Math.min(cores, stripesPerPass);
+    }
+
+    private int gridWidth(int partitions){
+        return partitions * worldHeight / worldWidth;
+    }
+}
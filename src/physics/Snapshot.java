@@ -0,0 +1,47 @@
+package physics;
+
+/**
+ * Copy of the drawable state of a simulation frame, written by Simulation.publishSnapshot().
+ * Positions and velocities are stored as floats, that is plenty for drawing and halves the copy.
+ * Once published a snapshot is only read until the SnapshotBuffer hands it back to the writer.
+ */
+public class Snapshot {
+    public float[] x = new float[0], y = new float[0];
+    public float[] vx = new float[0], vy = new float[0];
+    public float[] temperature = new float[0];
+    public int[] radius = new int[0];
+    public int[] color = new int[0];
+
+    public int count = 0;
+    public long frame = -1; //simulation frame this was taken at, -1 before the first publish
+    public double time = 0; //ms of simulated time
+
+    public void ensureCapacity(int n){
+        if (x.length < n){
+            x = new float[n];
+            y = new float[n];
+            vx = new float[n];
+            vy = new float[n];
+            temperature = new float[n];
+            radius = new int[n];
+            color = new int[n];
+        }
+    }
+
+    public void copyFrom(ParticleStore s, long frameNumber, double simulationTime){
+        int n = s.count;
+        ensureCapacity(n);
+        for (int i = 0; i < n; ++i){
+            x[i] = (float) s.x[i];
+            y[i] = (float) s.y[i];
+            vx[i] = (float) s.vx[i];
+            vy[i] = (float) s.vy[i];
+            temperature[i] = (float) s.temperature[i];
+        }
+        System.arraycopy(s.radius, 0, radius, 0, n);
+        System.arraycopy(s.color, 0, color, 0, n);
+        count = n;
+        frame = frameNumber;
+        time = simulationTime;
+    }
+}
@@ -0,0 +1,32 @@
+package physics;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock free triple buffer of Snapshots between one writer (the simulation thread) and one reader (the render thread).
+ * The writer fills its private back snapshot and publishes it by swapping it with the shared middle one.
+ * The reader takes the middle one in exchange for its front one whenever something new was published.
+ * Neither side ever waits for the other, and the reader always gets the newest complete frame.
+ */
+public class SnapshotBuffer {
+    private static final int FRESH = 4; //set in state when the middle snapshot has not been read yet
+
+    private final Snapshot[] snapshots = {new Snapshot(), new Snapshot(), new Snapshot()};
+    private final AtomicInteger middle = new AtomicInteger(1); //index of the middle snapshot, plus FRESH
+    private int back = 0; //only touched by the writer
+    private int front = 2; //only touched by the reader
+
+    public Snapshot writable(){ //writer side, fill this then call publish()
+        return snapshots[back];
+    }
+
+    public void publish(){
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    public Snapshot acquire(){ //reader side, newest published snapshot, stays valid until the next acquire()
+        if ((middle.get() & FRESH) != 0){
+            front = middle.getAndSet(front) & ~FRESH;
+        }
+        return snapshots[front];
+    }
+}
@@ -0,0 +1,188 @@
+package physics;
+import java.util.Arrays;
+
+/**
+ * Unbounded grid for open worlds (gridMode 3): only occupied cells exist, found through an open
+ * addressing hash table on packed long cell coordinates, so memory grows with the number of
+ * particles and not with the area they are spread over. Nothing is boxed and a rebuild allocates
+ * nothing once the arrays are large enough; the table is invalidated by bumping a generation
+ * stamp instead of being cleared.
+ * After sort() the occupied cells are numbered by column then row, cell r holds
+ * cellItems[cellStart[r] .. cellStart[r+1]) and sits at (cellX[r], cellY[r]).
+ * Cells are grouped into stripes of stripeWidth columns for the collision solver. Stripes get
+ * compact ids that keep the parity of their column position: stripe ids 2k are the k-th occupied even
+ * stripe, 2k + 1 the k-th odd one, so solving every second id never puts neighbouring columns together.
+ */
+public class SpatialHash {
+    public double cellSize;
+    public int stripeWidth; //columns per collision stripe
+
+    public int cellCount = 0; //occupied cells after sort()
+    public int[] cellStart = new int[1]; //prefix sums, length cellCount + 1
+    public int[] cellItems = new int[0]; //particle indices sorted by cell
+    public int[] cellX = new int[0], cellY = new int[0];
+    public long[] keyOf = new long[0]; //packed cell of each particle
+    public int[] cellOf = new int[0]; //cell number of each particle after sort()
+
+    public int stripeCount = 0; //compact stripe ids in use, some may be empty
+    public int[] stripeFirst = new int[0], stripeEnd = new int[0]; //cell range of each compact stripe id
+
+    private long[] tableKeys = new long[0];
+    private int[] tableStamp = new int[0]; //a slot is in use when its stamp equals generation
+    private int[] tableCell = new int[0];
+    private int generation = 0;
+    private int mask, shift;
+
+    private long[] unique = new long[0]; //occupied cells in insertion order, then sorted
+    private int[] slotOf = new int[0]; //table slot of each particle
+    private int[] cellFill = new int[0];
+
+    public SpatialHash(double cellSizeValue, int stripeWidthValue){
+        cellSize = cellSizeValue;
+        stripeWidth = stripeWidthValue;
+    }
+
+    public static long key(int cx, int cy){ //orders by column then row when compared as signed longs
+        return ((long) cx << 32) | ((cy ^ 0x80000000) & 0xFFFFFFFFL);
+    }
+
+    public static int keyX(long key){
+        return (int) (key >> 32);
+    }
+
+    public static int keyY(long key){
+        return (int) key ^ 0x80000000;
+    }
+
+    public int cellX(double x){ //far away coordinates saturate into the outermost cells
+        return (int) Math.floor(x / cellSize);
+    }
+
+    public int cellY(double y){
+        return (int) Math.floor(y / cellSize);
+    }
+
+    public int begin(int cell){
+        return cellStart[cell];
+    }
+
+    public int end(int cell){
+        return cellStart[cell + 1];
+    }
+
+    public void ensureCapacity(int n){
+        if (keyOf.length < n){
+            keyOf = new long[n];
+            cellOf = new int[n];
+            slotOf = new int[n];
+            cellItems = new int[n];
+            unique = new long[n];
+            cellX = new int[n];
+            cellY = new int[n];
+            cellStart = new int[n + 1];
+            cellFill = new int[n];
+            stripeFirst = new int[2 * n + 2];
+            stripeEnd = new int[2 * n + 2];
+        }
+        int slots = Integer.highestOneBit(Math.max(2 * n, 8) - 1) << 1; //at most half full
+        if (tableKeys.length < slots){
+            tableKeys = new long[slots];
+            tableStamp = new int[slots];
+            tableCell = new int[slots];
+            mask = slots - 1;
+            shift = 64 - Integer.numberOfTrailingZeros(slots);
+            generation = 0;
+        }
+    }
+
+    private int slot(long key){ //fibonacci hashing onto the table
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private int insert(long key){ //returns the slot of key, adding it to unique when new
+        int s = slot(key);
+        while (tableStamp[s] == generation){
+            if (tableKeys[s] == key){return s;}
+            s = (s + 1) & mask;
+        }
+        tableStamp[s] = generation;
+        tableKeys[s] = key;
+        unique[cellCount++] = key;
+        return s;
+    }
+
+    public int find(int cx, int cy){ //cell number of an occupied cell, -1 when empty
+        long key = key(cx, cy);
+        int s = slot(key);
+        while (tableStamp[s] == generation){
+            if (tableKeys[s] == key){return tableCell[s];}
+            s = (s + 1) & mask;
+        }
+        return -1;
+    }
+
+    public void build(ParticleStore store){
+        int n = store.count;
+        ensureCapacity(n);
+        computeCells(store, 0, n);
+        sort(n);
+    }
+
+    public void computeCells(ParticleStore store, int from, int to){ //independent per particle, safe to run in parallel chunks
+        for (int i = from; i < to; ++i){
+            keyOf[i] = key(cellX(store.x[i]), cellY(store.y[i]));
+        }
+    }
+
+    public void sort(int n){ //hashes keyOf[0, n) into occupied cells, numbers them by column and counting sorts the particles
+        if (++generation == 0){ //stamps wrapped around, start over from a clean table
+            Arrays.fill(tableStamp, 0);
+            generation = 1;
+        }
+        cellCount = 0;
+        for (int i = 0; i < n; ++i){slotOf[i] = insert(keyOf[i]);}
+
+        int cells = cellCount;
+        Arrays.sort(unique, 0, cells);
+        for (int r = 0; r < cells; ++r){
+            long key = unique[r];
+            cellX[r] = keyX(key);
+            cellY[r] = keyY(key);
+            int s = slot(key);
+            while (tableKeys[s] != key){s = (s + 1) & mask;}
+            tableCell[s] = r;
+        }
+
+        Arrays.fill(cellStart, 0, cells + 1, 0);
+        for (int i = 0; i < n; ++i){
+            int c = tableCell[slotOf[i]];
+            cellOf[i] = c;
+            cellStart[c + 1]++;
+        }
+        for (int c = 0; c < cells; ++c){
+            cellStart[c + 1] += cellStart[c];
+            cellFill[c] = cellStart[c];
+        }
+        for (int i = 0; i < n; ++i){
+            cellItems[cellFill[cellOf[i]]++] = i;
+        }
+
+        buildStripes(cells);
+    }
+
+    private void buildStripes(int cells){
+        int even = 0, odd = 0;
+        int r = 0;
+        while (r < cells){
+            int stripe = Math.floorDiv(cellX[r], stripeWidth);
+            int first = r;
+            while (r < cells && Math.floorDiv(cellX[r], stripeWidth) == stripe){++r;}
+            int id = (stripe & 1) == 0 ? 2 * even++ : 2 * odd++ + 1;
+            stripeFirst[id] = first;
+            stripeEnd[id] = r;
+        }
+        stripeCount = 2 * Math.max(even, odd);
+        for (int id = 2 * even; id < stripeCount; id += 2){stripeFirst[id] = stripeEnd[id] = 0;} //padding of the shorter parity
+        for (int id = 2 * odd + 1; id < stripeCount; id += 2){stripeFirst[id] = stripeEnd[id] = 0;}
+    }
+}
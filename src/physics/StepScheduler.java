@@ -0,0 +1,97 @@
+package physics;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent pool of worker threads for running the phases of a simulation step in parallel.
+ * The workers are started once and park on a Phaser between phases, so a phase costs a
+ * wake-up and a join barrier but no task objects. The calling thread takes part in the work as well.
+ * Work is handed out in chunks from a shared counter so uneven chunks balance themselves.
+ */
+public class StepScheduler {
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    private final Thread[] workers;
+    private final Phaser phaser;
+    private final AtomicInteger nextChunk = new AtomicInteger();
+
+    private volatile RangeTask task;
+    private volatile int total, grain;
+    private volatile boolean running = true;
+    private volatile Throwable failure;
+
+    public StepScheduler(int threads){ //threads includes the calling thread
+        int numWorkers = Math.max(0, threads - 1);
+        workers = new Thread[numWorkers];
+        phaser = new Phaser(numWorkers + 1);
+        for (int i = 0; i < numWorkers; ++i){
+            workers[i] = new Thread(this::workerLoop, "step-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int getThreadCount(){
+        return workers.length + 1;
+    }
+
+    public void parallelFor(int n, RangeTask rangeTask){
+        parallelFor(n, Math.max(1, n / (getThreadCount() * 4)), rangeTask);
+    }
+
+    public void parallelFor(int n, int grainSize, RangeTask rangeTask){ //runs rangeTask over [0, n) and returns when all of it is done
+        if (n <= 0){return;}
+        if (workers.length == 0 || n <= grainSize){
+            rangeTask.run(0, n);
+            return;
+        }
+        task = rangeTask;
+        total = n;
+        grain = Math.max(1, grainSize);
+        nextChunk.set(0);
+
+        phaser.arriveAndAwaitAdvance(); //release the workers
+        runChunks();
+        phaser.arriveAndAwaitAdvance(); //wait for them to finish
+
+        task = null;
+        Throwable t = failure;
+        if (t != null){
+            failure = null;
+            throw new RuntimeException("step task failed", t);
+        }
+    }
+
+    private void runChunks(){
+        RangeTask t = task;
+        int n = total, g = grain;
+        int from;
+        while ((from = nextChunk.getAndAdd(g)) < n){
+            try {
+                t.run(from, Math.min(n, from + g));
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+    }
+
+    private void workerLoop(){
+        while (true){
+            phaser.arriveAndAwaitAdvance();
+            if (!running){
+                phaser.arriveAndDeregister();
+                return;
+            }
+            runChunks();
+            phaser.arriveAndAwaitAdvance(); //done, must not arrive again until this phase closes
+        }
+    }
+
+    public void shutdown(){
+        if (!running){return;}
+        running = false;
+        if (workers.length > 0){phaser.arriveAndAwaitAdvance();}
+    }
+}
@@ -0,0 +1,38 @@
+package physics;
+
+/**
+ * Counter based random numbers: every value is a hash of (seed, stream, step, a, b), for example
+ * (seed, COLLISION, substep, particle, other particle). There is no generator state, so any thread
+ * can draw the number for any particle at any step without contention, and the result does not
+ * depend on which thread asks or in what order. That makes seeded runs bit exact at any thread count.
+ */
+public final class StreamRandom {
+    public static final int SPAWN = 1;
+    public static final int FIRE = 2;
+    public static final int COLLISION = 3;
+    public static final int FIELD = 4;
+    public static final int EMIT = 5;
+
+    private StreamRandom(){}
+
+    public static long mix(long z){ //SplitMix64 finaliser
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static long hash(long seed, int stream, long step, int a, int b){
+        long h = mix(seed + 0x9E3779B97F4A7C15L * stream);
+        h = mix(h ^ step);
+        return mix(h ^ (((long) a << 32) | (b & 0xFFFFFFFFL)));
+    }
+
+    public static double uniform(long seed, int stream, long step, int a, int b){ //in [0, 1)
+        return (hash(seed, stream, step, a, b) >>> 11) * 0x1.0p-53;
+    }
+
+    public static long newSeed(){ //for runs that do not ask for a particular seed
+        long s = mix(System.nanoTime() ^ mix(Thread.currentThread().getId()));
+        return s == 0 ? 1 : s;
+    }
+}
@@ -0,0 +1,131 @@
+package physics;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Flat grid narrow phase with the candidate distances computed in SIMD lanes (jdk.incubator.vector).
+ * The three cells of a neighbouring column are consecutive in FlatGrid.cellItems, so a particle's
+ * candidates are three contiguous slices, the same ones for every particle of the cell. A slice that fills
+ * at least one vector is copied into the solving thread's scratch arrays the first time the cell needs it
+ * and every particle of the cell loads its lanes from that copy, so nothing is allocated per call. The lanes
+ * compute the gap between the particle and every candidate with a plain sqrt, and only lanes that can touch
+ * go through the scalar Simulation.solvePairCollision, in the same order as the scalar loops. Both particles
+ * of a pair that was pushed apart are written back into the copy. The particle's own lane gets an infinite
+ * gap, a candidate sitting exactly on it a negative one, so the scalar check decides that pair with wherever
+ * the particle is by then. Shorter slices and the tail of a slice go to solvePairCollision directly.
+ * A lane is skipped only if its gap is larger than the distance the particle has been pushed since the
+ * lanes were computed, so nothing that the scalar path would solve is skipped and the results are
+ * identical with or without the Vector API.
+ * Only referenced when the jdk.incubator.vector module is present, see Simulation.
+ */
+final class VectorNarrowPhase {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = DOUBLES.length();
+    private static final double SLACK = 1e-6; //px of margin for rounding in the moved distance
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static final class Scratch { //the slices around one cell that fill a vector, per solving thread, grown to the largest seen
+        double[] x = new double[0], y = new double[0], reach = new double[0];
+        final int[] from = new int[3], to = new int[3], at = new int[3]; //per loaded slice: where it is in cellItems and in the copy
+        int slices, count; //loaded for the current cell, entries used
+
+        int load(ParticleStore s, int[] items, int first, int last){ //where the slice [first, last) starts in the copy, loaded once per cell
+            for (int c = 0; c < slices; ++c){
+                if (from[c] == first){return at[c];}
+            }
+            int n = count + last - first;
+            if (x.length < n){
+                x = Arrays.copyOf(x, n);
+                y = Arrays.copyOf(y, n);
+                reach = Arrays.copyOf(reach, n);
+            }
+            for (int k = first, j = count; k < last; ++k, ++j){
+                int q = items[k];
+                x[j] = s.x[q];
+                y[j] = s.y[q];
+                reach[j] = s.radius[q];
+            }
+            from[slices] = first;
+            to[slices] = last;
+            at[slices++] = count;
+            count = n;
+            return n - (last - first);
+        }
+
+        void moved(ParticleStore s, int[] items, int k){ //after a pair with the particle at k was solved
+            for (int c = 0; c < slices; ++c){
+                if (k < from[c] || k >= to[c]){continue;}
+                int j = at[c] + k - from[c];
+                x[j] = s.x[items[k]];
+                y[j] = s.y[items[k]];
+            }
+        }
+    }
+
+    private VectorNarrowPhase(){}
+
+    static double solveCell(Simulation simulation, ParticleStore s, FlatGrid g, int x, int y){
+        int h = g.height;
+        int[] items = g.cellItems;
+        int y0 = Math.max(y - 1, 0), y1 = Math.min(y + 1, h - 1);
+        Scratch scratch = SCRATCH.get();
+        scratch.slices = 0;
+        scratch.count = 0;
+        double overlap = 0;
+        for (int k = g.begin(x * h + y), end = g.end(x * h + y); k < end; ++k){
+            for (int nx = Math.max(x - 1, 0), nxEnd = Math.min(x + 1, g.width - 1); nx <= nxEnd; ++nx){
+                overlap += solveSlice(simulation, s, items, scratch, k, g.begin(nx * h + y0), g.end(nx * h + y1));
+            }
+        }
+        return overlap;
+    }
+
+    private static double solveSlice(Simulation simulation, ParticleStore s, int[] items, Scratch scratch, int k, int from, int to){
+        int p = items[k];
+        simulation.countCandidates(p, to - from);
+        double overlap = 0;
+        double near = simulation.checkingSupport() && simulation.asleep(p) ? Simulation.SUPPORT_SLACK : SLACK; //a sleeper also looks for the sleepers holding it up
+        int i = from;
+        boolean loaded = to - from >= LANES;
+        int j = loaded ? scratch.load(s, items, from, to) : 0;
+        int self = loaded && k >= from && k < to ? j + k - from : -1;
+        double selfReach = self < 0 ? 0 : scratch.reach[self];
+        if (self >= 0){scratch.reach[self] = Double.NEGATIVE_INFINITY;} //never a candidate of itself
+        for (; i + LANES <= to; i += LANES, j += LANES){
+            double px = s.x[p], py = s.y[p];
+            DoubleVector dx = DoubleVector.fromArray(DOUBLES, scratch.x, j).sub(px);
+            DoubleVector dy = DoubleVector.fromArray(DOUBLES, scratch.y, j).sub(py);
+            DoubleVector d2 = dx.mul(dx).add(dy.mul(dy));
+            DoubleVector reach = DoubleVector.fromArray(DOUBLES, scratch.reach, j).add(s.radius[p]);
+            DoubleVector gap = d2.sqrt().sub(reach);
+            if (!gap.compare(VectorOperators.LT, near).anyTrue()){continue;} //nothing within reach, the common case
+
+            double moved = 0;
+            for (int lane = 0; lane < LANES; ++lane){
+                if (gap.lane(lane) >= moved + near){continue;}
+                double o = simulation.solvePairCollision(p, items[i + lane]);
+                if (o > 0){
+                    overlap += o;
+                    scratch.moved(s, items, k);
+                    scratch.moved(s, items, i + lane);
+                    double mx = s.x[p] - px, my = s.y[p] - py;
+                    moved = Math.sqrt(mx * mx + my * my);
+                }
+            }
+        }
+        if (self >= 0){scratch.reach[self] = selfReach;}
+        for (; i < to; ++i){ //tail shorter than a vector
+            double o = simulation.solvePairCollision(p, items[i]);
+            if (o > 0 && scratch.slices > 0){
+                scratch.moved(s, items, k);
+                scratch.moved(s, items, i);
+            }
+            overlap += o;
+        }
+        return overlap;
+    }
+}